@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.library.ImportMode;
+import main.library.ImportStatistics;
+import main.library.Library;
+
+/**
+ * imports all three CSV files of the dataset into an empty library, once file by file with the streaming import and
+ * once with the parallel {@link Library#csvImport(Path, Path, Path)}, and exports the whole library again, plain and
+ * compressed. Saving and loading a binary snapshot of the library are measured as well
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatalogBenchmark {
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int copies;
+
+    private Path directory;
+    private Path books;
+    private Path bookCopies;
+    private Path customers;
+    private Path snapshot;
+    private Library exported;
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        directory = Files.createTempDirectory("library-benchmark");
+        books = directory.resolve("books.csv");
+        bookCopies = directory.resolve("bookcopies.csv");
+        customers = directory.resolve("customers.csv");
+        exported = Dataset.create(copies);
+        exported.csvExport(books, bookCopies, customers, false);
+        snapshot = directory.resolve("library.snapshot");
+        exported.saveSnapshot(snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createLibrary() {
+        library = new Library();
+    }
+
+    @Benchmark
+    public long importStreaming() throws IOException {
+        return library.csvBook(books, ImportMode.STREAMING).getRows()
+                + library.csvBookCopy(bookCopies, ImportMode.STREAMING).getRows()
+                + library.csvCustomer(customers, ImportMode.STREAMING).getRows();
+    }
+
+    @Benchmark
+    public ImportStatistics importParallel() throws IOException {
+        return library.csvImport(books, bookCopies, customers);
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        exported.csvExport(directory.resolve("export-books.csv"), directory.resolve("export-bookcopies.csv"),
+                directory.resolve("export-customers.csv"), false);
+    }
+
+    @Benchmark
+    public void exportCompressed() throws IOException {
+        exported.csvExport(directory.resolve("export-books.csv.gz"), directory.resolve("export-bookcopies.csv.gz"),
+                directory.resolve("export-customers.csv.gz"), true);
+    }
+
+    @Benchmark
+    public void saveSnapshot() throws IOException {
+        exported.saveSnapshot(directory.resolve("saved.snapshot"));
+    }
+
+    @Benchmark
+    public Library loadSnapshot() throws IOException {
+        return Library.loadSnapshot(snapshot);
+    }
+}
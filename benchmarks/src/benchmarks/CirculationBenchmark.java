@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import main.library.Library;
+
+/**
+ * lends a copy and returns it again. Every benchmark thread uses its own customers and copies, so threads started
+ * with -t only compete for the locks of the library, never for the same copy
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CirculationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({ "1000", "100000", "1000000", "10000000" })
+        public int copies;
+
+        @Param({ "false", "true" })
+        public boolean metrics;
+
+        Library library;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            library = Dataset.create(copies);
+            library.getMetrics().setEnabled(metrics);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Desk {
+        // Boxed up front, so the benchmark measures the library and not the boxing of the ids
+        private Long[] customerIds;
+        private Long[] bookCopyIds;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(Data data, ThreadParams thread) {
+            int threads = thread.getThreadCount();
+            int index = thread.getThreadIndex();
+            customerIds = new Long[Math.max(1, Dataset.customers(data.copies) / threads)];
+            for (int i = 0; i < customerIds.length; i++)
+                customerIds[i] = (long) i * threads + index;
+            // Ids that are not a multiple of ten belong to available copies
+            bookCopyIds = new Long[Math.max(1, data.copies / 10 / threads)];
+            for (int i = 0; i < bookCopyIds.length; i++)
+                bookCopyIds[i] = 10L * (i * threads + index) + 1;
+        }
+    }
+
+    @Benchmark
+    public void lendAndReturn(Data data, Desk desk) {
+        int i = desk.next++ & Integer.MAX_VALUE;
+        Long customerId = desk.customerIds[i % desk.customerIds.length];
+        Long bookCopyId = desk.bookCopyIds[i % desk.bookCopyIds.length];
+        data.library.lendBook(customerId, bookCopyId);
+        data.library.returnBook(customerId, bookCopyId);
+    }
+}
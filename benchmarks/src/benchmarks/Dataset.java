@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.Library;
+
+/**
+ * creates the library the benchmarks run on. For a given number of copies there is a book for every tenth copy and
+ * a customer for every twentieth copy, every tenth copy is lent and the loans are spread evenly over the customers.
+ * Copies with an id that is not a multiple of ten are available
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+final class Dataset {
+    static final int PUBLISHERS = 50;
+    static final int AUTHORS = 1_000;
+
+    private Dataset() {
+    }
+
+    static int books(int copies) {
+        return Math.max(10, copies / 10);
+    }
+
+    static int customers(int copies) {
+        return Math.max(10, copies / 20);
+    }
+
+    static String isbn(int book) {
+        return "978" + book;
+    }
+
+    static String title(int book) {
+        return "Title " + book + " Programming " + book % 100;
+    }
+
+    static String author(int book) {
+        return "Author " + book % AUTHORS;
+    }
+
+    static Library create(int copies) {
+        int books = books(copies);
+        int customers = customers(copies);
+        Set<Book> bookSet = new HashSet<>();
+        for (int i = 0; i < books; i++)
+            bookSet.add(new Book(isbn(i), title(i), Set.of(author(i)), 1950 + i % 70, "Stuttgart",
+                    "Publisher " + i % PUBLISHERS, 1 + i % 5));
+        Set<BookCopy> copySet = new HashSet<>();
+        for (long id = 0; id < copies; id++)
+            copySet.add(new BookCopy(id, isbn((int) (id % books)), "A" + id % 500, LocalDate.of(2020, 1, 1),
+                    id % 10 == 0, LocalDate.of(2022, 3, 1)));
+        // The k-th lent copy (id 10 * k) belongs to customer k % customers
+        long lentCopies = (copies + 9) / 10;
+        Set<Customer> customerSet = new HashSet<>();
+        for (long id = 0; id < customers; id++) {
+            Set<Long> loans = new HashSet<>();
+            for (long k = id; k < lentCopies; k += customers)
+                loans.add(10 * k);
+            customerSet.add(new Customer(id, "Name " + id, "First", "Street " + id % 100, "Stuttgart", "70569",
+                    true, true, loans));
+        }
+        return new Library(copySet, customerSet, bookSet);
+    }
+
+    /**
+     * writes the CSV files of the library for the given number of copies to the directory
+     */
+    static void write(int copies, Path books, Path bookCopies, Path customers) throws IOException {
+        create(copies).csvExport(books, bookCopies, customers, false);
+    }
+}
@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.library.ImportMode;
+import main.library.ImportStatistics;
+import main.library.Library;
+
+/**
+ * imports the books, the book copies and the customers of the dataset with every import mode. Copies need their books
+ * and customers their copies, these are imported before each call and are not part of the measured time
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int copies;
+
+    @Param({ "OPENCSV", "STREAMING", "MAPPED" })
+    public ImportMode mode;
+
+    private Path directory;
+    private Path books;
+    private Path bookCopies;
+    private Path customers;
+    private Library library;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        directory = Files.createTempDirectory("library-benchmark");
+        books = directory.resolve("books.csv");
+        bookCopies = directory.resolve("bookcopies.csv");
+        customers = directory.resolve("customers.csv");
+        Dataset.write(copies, books, bookCopies, customers);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WithBooks {
+        Library library;
+
+        @Setup(Level.Invocation)
+        public void setUp(ImportBenchmark data) throws IOException {
+            library = new Library();
+            library.csvBook(data.books, ImportMode.STREAMING);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WithBookCopies {
+        Library library;
+
+        @Setup(Level.Invocation)
+        public void setUp(ImportBenchmark data) throws IOException {
+            library = new Library();
+            library.csvBook(data.books, ImportMode.STREAMING);
+            library.csvBookCopy(data.bookCopies, ImportMode.STREAMING);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createLibrary() {
+        library = new Library();
+    }
+
+    @Benchmark
+    public ImportStatistics csvBook() throws IOException {
+        return library.csvBook(books, mode);
+    }
+
+    @Benchmark
+    public ImportStatistics csvBookCopy(WithBooks state) throws IOException {
+        return state.library.csvBookCopy(bookCopies, mode);
+    }
+
+    @Benchmark
+    public ImportStatistics csvCustomer(WithBookCopies state) throws IOException {
+        return state.library.csvCustomer(customers, mode);
+    }
+}
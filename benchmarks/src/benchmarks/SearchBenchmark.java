@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.app.UserInterface;
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.Library;
+import main.logic.Logic;
+
+/**
+ * runs every search of {@link Logic} and the publisher report. Each call searches for the next of a fixed set of
+ * existing books, authors and customers, with and without the search cache
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int copies;
+
+    // With the search cache every search after the first of a key is answered from the cache
+    @Param({ "false", "true" })
+    public boolean searchCache;
+
+    private Library library;
+    private UserInterface userInterface;
+    private String[] isbns;
+    private String[] titles;
+    private String[] authors;
+    private Long[] customerIds;
+    private Book[] books;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = Dataset.create(copies);
+        library.getSearchCache().setEnabled(searchCache);
+        userInterface = new UserInterface(library);
+        int bookCount = Dataset.books(copies);
+        int customerCount = Dataset.customers(copies);
+        isbns = new String[KEYS];
+        titles = new String[KEYS];
+        authors = new String[KEYS];
+        customerIds = new Long[KEYS];
+        books = new Book[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            int book = (int) ((i * 0x9E3779B97F4A7C15L >>> 33) % bookCount);
+            isbns[i] = Dataset.isbn(book);
+            titles[i] = Dataset.title(book);
+            authors[i] = Dataset.author(book);
+            customerIds[i] = (long) (i * 7919L % customerCount);
+            books[i] = library.getBook(isbns[i]).orElseThrow();
+        }
+    }
+
+    private int next() {
+        return next++ & KEYS - 1;
+    }
+
+    @Benchmark
+    public Set<BookCopy> searchViaISBN() {
+        return Logic.searchViaISBN(isbns[next()], library);
+    }
+
+    @Benchmark
+    public Set<BookCopy> findMatchingCopies() {
+        return Logic.findMatchingCopies(books[next()], library);
+    }
+
+    @Benchmark
+    public Set<BookCopy> searchViaTitle() {
+        return Logic.searchViaTitle(titles[next()], library);
+    }
+
+    @Benchmark
+    public List<Book> searchBooksViaTitle() {
+        return Logic.searchBooksViaTitle(titles[next()], Logic.TITLE_SEARCH_LIMIT, library);
+    }
+
+    @Benchmark
+    public Set<BookCopy> searchViaAuthor() {
+        return Logic.searchViaAuthor(authors[next()], library);
+    }
+
+    @Benchmark
+    public Customer searchCustomerViaId() {
+        return Logic.searchCustomerViaId(customerIds[next()], library);
+    }
+
+    @Benchmark
+    public Book getBookViaISBN() {
+        return Logic.getBookViaISBN(isbns[next()], library);
+    }
+
+    @Benchmark
+    public List<String> printAllPublisherAndBookCopies() {
+        return userInterface.printAllPublisherAndBookCopies();
+    }
+}
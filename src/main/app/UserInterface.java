@@ -3,6 +3,7 @@ package main.app;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -10,6 +11,8 @@ import main.library.Book;
 import main.library.BookCopy;
 import main.library.Customer;
 import main.library.Library;
+import main.library.Page;
+import main.library.PublisherStatistics;
 import main.logic.Logic;
 
 
@@ -26,6 +29,8 @@ import main.logic.Logic;
 
 
 public class UserInterface {
+    // Listings are printed in pages of this size, so only one page is held at a time
+    private static final int PAGE_SIZE = 1000;
 
     private final Library library;
 
@@ -48,7 +53,7 @@ public class UserInterface {
         Objects.requireNonNull(book);
         var returnString = new StringBuilder();
         returnString.append(bookString(Logic.getBookViaISBN(book.getIsbn(), library)));
-        returnString.append(book.getId());
+        returnString.append(book.getIdValue());
         returnString.append(", ");
         returnString.append(book.isLent() ? "lent" : "not lent");
         returnString.append(", ");
@@ -88,7 +93,7 @@ public class UserInterface {
     private String customerString(final Customer customer) {
         Objects.requireNonNull(customer);
         var returnString = new StringBuilder();
-        returnString.append(customer.getId());
+        returnString.append(customer.getIdValue());
         returnString.append(", ");
         returnString.append(customer.getName());
         returnString.append(" ");
@@ -96,7 +101,7 @@ public class UserInterface {
         returnString.append(", ");
         returnString.append(customer.hasOverdraftFees());
         returnString.append(", ");
-        returnString.append("Bookcopies lent: " + customer.getBookCopiesId().size());
+        returnString.append("Bookcopies lent: " + customer.getBookCopyCount());
         return returnString.toString();
     }
 
@@ -119,6 +124,10 @@ public class UserInterface {
         System.out.println("10. Load Customer csv");
         System.out.println("11. Load BookCopies csv");
         System.out.println("12. Load Books csv");
+        System.out.println("13. Load Books, BookCopies and Customer csv at once");
+        System.out.println("14. Save library snapshot");
+        System.out.println("15. Export Books, BookCopies and Customer csv");
+        System.out.println("16. Show metrics and search cache statistics");
         System.out.println("--------------------------------------------------------------");
     }
 
@@ -150,6 +159,21 @@ public class UserInterface {
         supplier.get().stream().forEach(book -> System.out.println(bookString(book)));
     }
 
+    /**
+     * prints a listing page by page
+     *
+     * @param pages returns the page after the given token, the first page for null
+     * @param toString
+     */
+    public <T> void printPages(Function<String, Page<T>> pages, Function<T, String> toString) {
+        String token = null;
+        do {
+            Page<T> page = pages.apply(token);
+            page.getItems().forEach(item -> System.out.println(toString.apply(item)));
+            token = page.getNextPageToken();
+        } while (token != null);
+    }
+
     /**
      * searches the library for all the book copies with the given ISBN, which the worker entered into the console, by using the scanner.
      * it then prints the matching book copies by using the method "printSetOfBookCopy".
@@ -177,7 +201,7 @@ public class UserInterface {
 
     /**
      * searches the library for all the book copies with the given author, which the worker entered into the console, by using the scanner.
-     * it then prints the matching book copies by using the method "printSetOfBookCopy".
+     * it then prints the matching book copies page by page by using the method "printPages".
      *
      * @param scanner
      */
@@ -186,7 +210,7 @@ public class UserInterface {
         System.out.println("Enter Author of book: ");
         final String authorBeginning = scanner.next();
         final String author = authorBeginning + scanner.nextLine();
-        printSetOfBookCopy(() -> Logic.searchViaAuthor(author, library));
+        printPages(token -> Logic.searchViaAuthor(author, PAGE_SIZE, token, library), this::bookString);
     }
 
     /**
@@ -220,35 +244,43 @@ public class UserInterface {
     }
 
     /**
-     * Creates a Set and List and uses those to calculate the percentage of how many book copies were published by which publisher via
-     * iteration and prints that out
-     * @return AllPublisherSet
+     * Lists every publisher with the number of its book copies and their exact share of all book copies, the publisher
+     * with the most copies first. The counts are kept by the library, so the report does not go through the copies
+     * @return one line per publisher
      */
-    public Set<String> printAllPublisherAndBookCopies() {
-        Set<String> AllPublisherSet = new HashSet<String>();
-        library.getBookCopies().stream()
-                .forEach(book -> AllPublisherSet.add(Logic.getBookViaISBN(book.getIsbn(), library).getPublisher()));
-        List<String> AllPublisherList = new ArrayList<String>(AllPublisherSet);
-        int[] NumberOfBookCopies = new int[AllPublisherList.size()];
-        for (BookCopy bookCopie : library.getBookCopies()) {
-            for (int i = 0; i < AllPublisherList.size(); i++) {
-                if (AllPublisherList.get(i).equals(Logic.getBookViaISBN(bookCopie.getIsbn(), library).getPublisher())) {
-                    NumberOfBookCopies[i]++;
-                }
-            }
-        }
-        AllPublisherSet.clear();
-        for (int i = 0; i < AllPublisherList.size(); i++) {
-            double Percentage = (NumberOfBookCopies[i] * 100) / library.getBookCopies().size();
-            AllPublisherSet.add(
-                    AllPublisherList.get(i) + ":  " + NumberOfBookCopies[i] + " BookCopies " + "(" + Percentage + "%)");
-        }
-        return AllPublisherSet;
-
+    public List<String> printAllPublisherAndBookCopies() {
+        return library.getPublisherStatistics().stream().map(PublisherStatistics::toString).toList();
     }
 
     public static void main(String[] args) throws IOException {
-        UserInterface ui = new UserInterface();
+        // A snapshot saved with menu item 14 can be passed as the first argument
+        UserInterface ui;
+        try {
+            ui = args.length > 0 ? new UserInterface(Library.loadSnapshot(Path.of(args[0]))) : new UserInterface();
+        } catch (IOException e) {
+            System.err.println("Snapshot could not be read");
+            return;
+        } catch (RuntimeException e) {
+            // A damaged snapshot or one of another version
+            System.err.println(e.getMessage());
+            return;
+        }
+        // A journal passed as the second argument keeps lending, returning and deleting across restarts
+        if (args.length > 1) {
+            try {
+                ui.library.openJournal(Path.of(args[1]));
+            } catch (IOException e) {
+                System.err.println("Journal could not be read");
+                return;
+            } catch (RuntimeException e) {
+                // A damaged journal or one that does not fit the snapshot
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+        // Metrics can be read and switched on through JMX, -Dlibrary.metrics=true switches them on at the start
+        ui.library.getMetrics().register("library");
+        ui.library.getMetrics().setEnabled(Boolean.getBoolean("library.metrics"));
         Scanner scanner = new Scanner(System.in);
         Boolean userExit = false;
 
@@ -330,7 +362,7 @@ public class UserInterface {
                     System.out.println("Path to customer.csv:");
                     Path customerCSV = Path.of(scanner.next());
                     try {
-                        ui.library.csvCustomer(customerCSV);
+                        System.out.println("Imported customers: " + ui.library.csvCustomer(customerCSV));
                     } catch (IOException e) {
                         System.err.println("Csv file invalid");
                         break;
@@ -343,7 +375,7 @@ public class UserInterface {
                     System.out.println("Path to bookCopies.csv:");
                     Path bookCopiesCsv = Path.of(scanner.next());
                     try {
-                        ui.library.csvBookCopy(bookCopiesCsv);
+                        System.out.println("Imported bookCopies: " + ui.library.csvBookCopy(bookCopiesCsv));
                     } catch (IOException e) {
                         System.err.println("Csv file invalid");
                         break;
@@ -356,7 +388,7 @@ public class UserInterface {
                     System.out.println("Path to books.csv:");
                     Path booksCsv = Path.of(scanner.next());
                     try {
-                        ui.library.csvBook(booksCsv);
+                        System.out.println("Imported books: " + ui.library.csvBook(booksCsv));
                     } catch (IOException e) {
                         System.err.println("Csv file invalid");
                         break;
@@ -365,6 +397,56 @@ public class UserInterface {
                         break;
                     }
                     break;
+                case "13":
+                    System.out.println("Path to books.csv, bookCopies.csv and customer.csv:");
+                    Path allBooksCsv = Path.of(scanner.next());
+                    Path allBookCopiesCsv = Path.of(scanner.next());
+                    Path allCustomersCsv = Path.of(scanner.next());
+                    try {
+                        System.out.println("Imported rows: "
+                                + ui.library.csvImport(allBooksCsv, allBookCopiesCsv, allCustomersCsv));
+                    } catch (IOException e) {
+                        System.err.println("Csv file invalid");
+                        break;
+                    } catch(RuntimeException e) {
+                        System.err.println(e.getMessage());
+                        break;
+                    }
+                    break;
+                case "14":
+                    System.out.println("Path to the snapshot file:");
+                    Path snapshot = Path.of(scanner.next());
+                    try {
+                        ui.library.saveSnapshot(snapshot);
+                        System.out.println("Snapshot saved");
+                    } catch (IOException e) {
+                        System.err.println("Snapshot could not be saved");
+                        break;
+                    } catch(RuntimeException e) {
+                        System.err.println(e.getMessage());
+                        break;
+                    }
+                    break;
+                case "15":
+                    System.out.println("Path to books.csv, bookCopies.csv and customer.csv:");
+                    Path exportBooksCsv = Path.of(scanner.next());
+                    Path exportBookCopiesCsv = Path.of(scanner.next());
+                    Path exportCustomersCsv = Path.of(scanner.next());
+                    // Asked once, the choice applies to all three files
+                    System.out.println("Compress the files with gzip? (y/n)");
+                    boolean gzip = scanner.next().equalsIgnoreCase("y");
+                    try {
+                        ui.library.csvExport(exportBooksCsv, exportBookCopiesCsv, exportCustomersCsv, gzip);
+                        System.out.println("Csv files exported");
+                    } catch (IOException e) {
+                        System.err.println("Csv files could not be written");
+                        break;
+                    }
+                    break;
+                case "16":
+                    System.out.print(ui.library.getMetrics().dump());
+                    System.out.println(ui.library.getSearchCache());
+                    break;
                 case "q":
                     userExit = true;
                     break;
@@ -373,6 +455,7 @@ public class UserInterface {
                     break;
             }
         } while (!userExit);
+        ui.library.closeJournal();
         scanner.close();
     }
 
@@ -392,18 +475,18 @@ public class UserInterface {
             String number = scanner.next();
             switch (number) {
                 case "1":
-                    ui.printSetOfBook(ui.library::getBooks);
+                    ui.printPages(token -> ui.library.getBooks(PAGE_SIZE, token), ui::bookString);
                     break;
                 case "2":
-                    ui.printSetOfBookCopy(() -> ui.library.getBookCopies().stream().filter(book -> book.isLent())
-                            .collect(Collectors.toUnmodifiableSet()));
+                    ui.printPages(token -> ui.library.getLentBookCopies(PAGE_SIZE, token), ui::bookString);
+                    System.out.println(ui.library.getLentBookCopyCount() + " lent bookCopies");
                     break;
                 case "3":
-                    ui.printSetOfBookCopy(() -> ui.library.getBookCopies().stream().filter(book -> !book.isLent())
-                            .collect(Collectors.toUnmodifiableSet()));
+                    ui.printPages(token -> ui.library.getAvailableBookCopies(PAGE_SIZE, token), ui::bookString);
+                    System.out.println(ui.library.getAvailableBookCopyCount() + " available bookCopies");
                     break;
                 case "4":
-                    ui.library.getCustomers().stream().forEach(customer -> System.out.println(ui.customerString(customer)));
+                    ui.printPages(token -> ui.library.getCustomers(PAGE_SIZE, token), ui::customerString);
                     break;
                 case "5":
                     System.out.println("Enter customerID: ");
@@ -411,8 +494,8 @@ public class UserInterface {
                     try {
                         ui.printSetOfBookCopy(() -> Logic.searchCustomerViaId(customerID, ui.library).getBookCopiesId()
                                 .stream()
-                                .map(id -> ui.library.getBookCopies().stream().filter(book -> book.getId().equals(id))
-                                        .findAny().orElseThrow(() -> new RuntimeException("Book with id not found")))
+                                .map(id -> ui.library.getBookCopy(id)
+                                        .orElseThrow(() -> new RuntimeException("Book with id not found")))
                                 .collect(Collectors.toSet()));
                     } catch (RuntimeException e) {
                         System.err.println(e.getMessage());
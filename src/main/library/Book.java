@@ -13,10 +13,10 @@ public class Book {
     private final String isbn;
     private final String title;
     private final Set<String> authors;
-    private final Integer year;
+    private final int year;
     private final String city;
     private final String publisher;
-    private final Integer edition;
+    private final int edition;
 
     public Book(String isbn, String title, Set<String> authors, Integer year, String city, String publisher,
                 Integer edition) {
@@ -52,6 +52,14 @@ public class Book {
         return year;
     }
 
+    /**
+     * returns the year of release of the book without boxing it
+     * @return year of release
+     */
+    public int getYearValue() {
+        return year;
+    }
+
     /**
      * returns the ISBN of the book
      * @return ISBN
@@ -83,5 +91,14 @@ public class Book {
     public Integer getEdition() {
         return edition;
     }
+
+    /**
+     * returns the edition of the book without boxing it
+     *
+     * @return edition
+     */
+    public int getEditionValue() {
+        return edition;
+    }
 }
 
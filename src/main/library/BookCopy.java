@@ -4,18 +4,19 @@ import java.time.LocalDate;
 import java.util.Objects;
 
 /**
-        * creates a book copy
+        * creates a book copy. The catalog data of a copy never changes, only the library updates whether and since when
+        * the copy is lent, in place and without creating a new copy
         *
         * @author Ahmad Al-Salameh (aa082)
         *
         */
 public class BookCopy {
-    private final Long id;
+    private final long id;
     private final String isbn;
     private final String shelfLocation;
     private final LocalDate addedToLibrary;
-    private final Boolean lent;
-    private final LocalDate lentDate;
+    private volatile boolean lent;
+    private volatile LocalDate lentDate;
 
     public BookCopy(Long id, String isbn, String shelfLocation, LocalDate addedToLibrary, Boolean lent,
                     LocalDate lentDate) {
@@ -36,6 +37,15 @@ public class BookCopy {
         return id;
     }
 
+    /**
+     * returns the id of the book copy without boxing it
+     *
+     * @return id
+     */
+    public long getIdValue() {
+        return id;
+    }
+
     /**
      * returns the book which is superior to the book copy
      *
@@ -68,7 +78,7 @@ public class BookCopy {
      *
      * @return true/false
      */
-    public Boolean isLent() {
+    public boolean isLent() {
         return lent;
     }
 
@@ -81,4 +91,31 @@ public class BookCopy {
         return lentDate;
     }
 
+    /**
+     * returns a new copy with the same data, a library keeps its own copies so that lending in one library does not
+     * change the copies of another
+     *
+     * @return copy
+     */
+    BookCopy copy() {
+        return new BookCopy(id, isbn, shelfLocation, addedToLibrary, lent, lentDate);
+    }
+
+    /**
+     * marks the copy as lent on the given date
+     *
+     * @param date lending date
+     */
+    void markLent(LocalDate date) {
+        lentDate = date;
+        lent = true;
+    }
+
+    /**
+     * marks the copy as returned, the last lending date is kept
+     */
+    void markReturned() {
+        lent = false;
+    }
+
 }
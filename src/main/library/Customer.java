@@ -1,24 +1,34 @@
 package main.library;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
- * creates a customer
+ * creates a customer. The personal data of a customer never changes, only the library updates the list of lent book
+ * copies, in place and without creating a new customer
  *
  * @author Ahmad Al-Salameh (aa082)
  *
  */
 public class Customer {
-    private final Long id;
+    /**
+     * maximum number of book copies a customer can have lent at the same time
+     */
+    public static final int MAX_BOOK_COPIES = 5;
+
+    private final long id;
     private final String name;
     private final String firstName;
     private final String address;
     private final String zipCode;
     private final String city;
-    private final Boolean hasOverdraftFees;
-    private final Boolean hasPaidMonthlyContribution;
-    private final Set<Long> bookCopiesId;
+    private final boolean hasOverdraftFees;
+    private final boolean hasPaidMonthlyContribution;
+    // Ids of the lent book copies in bookCopyIds[0, bookCopyCount), guarded by this
+    private final long[] bookCopyIds;
+    private int bookCopyCount;
 
     public Customer(Long id, String name, String firstName, String address, String city, String zipCode,
                     Boolean hasOverdraftFees, Boolean hasPaidMonthlyContribution, Set<Long> bookCopiesId) {
@@ -29,7 +39,10 @@ public class Customer {
         this.city = Objects.requireNonNull(city);
         this.zipCode = Objects.requireNonNull(zipCode);
         this.address = Objects.requireNonNull(address);
-        this.bookCopiesId = Set.copyOf(Objects.requireNonNull(bookCopiesId));
+        if (Objects.requireNonNull(bookCopiesId).size() > MAX_BOOK_COPIES)
+            throw new IllegalArgumentException("Customer can't have more than " + MAX_BOOK_COPIES + " books");
+        this.bookCopyIds = new long[MAX_BOOK_COPIES];
+        bookCopiesId.forEach(bookCopyId -> bookCopyIds[bookCopyCount++] = bookCopyId);
         this.hasPaidMonthlyContribution = Objects.requireNonNull(hasPaidMonthlyContribution);
     }
 
@@ -42,6 +55,15 @@ public class Customer {
         return id;
     }
 
+    /**
+     * returns the id of the customer without boxing it
+     *
+     * @return id
+     */
+    public long getIdValue() {
+        return id;
+    }
+
     /**
      * returns the first name of the customer
      *
@@ -101,11 +123,86 @@ public class Customer {
     }
 
     /**
-     * returns the lended book copies of the customer
+     * returns the ids of the lended book copies of the customer, as a snapshot that does not change on later lending
      *
      * @return lended book copies
      */
-    public Set<Long> getBookCopiesId() {
-        return bookCopiesId;
+    public synchronized Set<Long> getBookCopiesId() {
+        return Arrays.stream(bookCopyIds, 0, bookCopyCount).boxed().collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * returns a new customer with the same data and the same lent book copies, a library keeps its own customers so
+     * that lending in one library does not change the customers of another
+     *
+     * @return copy
+     */
+    Customer copy() {
+        return new Customer(id, name, firstName, address, city, zipCode, hasOverdraftFees, hasPaidMonthlyContribution,
+                getBookCopiesId());
+    }
+
+    /**
+     * returns the number of lended book copies of the customer
+     *
+     * @return number of lended book copies
+     */
+    public synchronized int getBookCopyCount() {
+        return bookCopyCount;
+    }
+
+    /**
+     * returns true/false if the customer has/has not lent the book copy with the given id
+     *
+     * @param bookCopyId
+     * @return true/false
+     */
+    public synchronized boolean hasBookCopy(long bookCopyId) {
+        return indexOf(bookCopyId) >= 0;
+    }
+
+    /**
+     * copies the ids of the lended book copies into the array, starting at the given offset
+     *
+     * @param target
+     * @param offset
+     * @return number of copied ids
+     */
+    synchronized int copyBookCopyIds(long[] target, int offset) {
+        System.arraycopy(bookCopyIds, 0, target, offset, bookCopyCount);
+        return bookCopyCount;
+    }
+
+    /**
+     * adds the id of a lent book copy
+     *
+     * @param bookCopyId
+     * @throws RuntimeException if the customer already has MAX_BOOK_COPIES book copies
+     */
+    synchronized void addBookCopy(long bookCopyId) {
+        if (bookCopyCount == MAX_BOOK_COPIES)
+            throw new RuntimeException("Customer has already " + MAX_BOOK_COPIES + " books");
+        bookCopyIds[bookCopyCount++] = bookCopyId;
+    }
+
+    /**
+     * removes the id of a returned book copy
+     *
+     * @param bookCopyId
+     * @return true/false if the customer had/had not lent the copy
+     */
+    synchronized boolean removeBookCopy(long bookCopyId) {
+        int index = indexOf(bookCopyId);
+        if (index < 0)
+            return false;
+        bookCopyIds[index] = bookCopyIds[--bookCopyCount];
+        return true;
+    }
+
+    private int indexOf(long bookCopyId) {
+        for (int i = 0; i < bookCopyCount; i++)
+            if (bookCopyIds[i] == bookCopyId)
+                return i;
+        return -1;
     }
 }
@@ -0,0 +1,108 @@
+package main.library;
+
+import java.util.Objects;
+
+/**
+ * maps ids to values without boxing the ids, so looking up a value creates no objects. The entries are kept in one
+ * table with linear probing, removing an entry moves the entries behind it back, so no deleted markers are left.
+ * Changes have to be serialized by the caller and made visible to readers by a lock
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ * @param <V> type of the values
+ */
+final class IdMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] ids = new long[MIN_CAPACITY];
+    // An empty entry has no value
+    private Object[] values = new Object[MIN_CAPACITY];
+    private int size;
+
+    /**
+     * returns the value of the id
+     *
+     * @param id
+     * @return value, null if the id has none
+     */
+    @SuppressWarnings("unchecked")
+    V get(long id) {
+        int mask = values.length - 1;
+        for (int i = index(id, mask); values[i] != null; i = i + 1 & mask)
+            if (ids[i] == id)
+                return (V) values[i];
+        return null;
+    }
+
+    /**
+     * sets the value of the id
+     *
+     * @param id
+     * @param value
+     * @return previous value, null if the id had none
+     */
+    @SuppressWarnings("unchecked")
+    V put(long id, V value) {
+        Objects.requireNonNull(value);
+        if (4 * (size + 1) > 3 * values.length)
+            resize(2 * values.length);
+        int mask = values.length - 1;
+        int i = index(id, mask);
+        for (; values[i] != null; i = i + 1 & mask) {
+            if (ids[i] == id) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        ids[i] = id;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * removes the value of the id
+     *
+     * @param id
+     * @return removed value, null if the id had none
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long id) {
+        int mask = values.length - 1;
+        int hole = index(id, mask);
+        while (values[hole] != null && ids[hole] != id)
+            hole = hole + 1 & mask;
+        V removed = (V) values[hole];
+        if (removed == null)
+            return null;
+        // An entry behind the hole moves into it unless its own position lies between the hole and the entry
+        for (int i = hole + 1 & mask; values[i] != null; i = i + 1 & mask) {
+            if ((i - index(ids[i], mask) & mask) >= (i - hole & mask)) {
+                ids[hole] = ids[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        Object[] oldValues = values;
+        ids = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+        for (int i = 0; i < oldValues.length; i++)
+            if (oldValues[i] != null)
+                put(oldIds[i], (V) oldValues[i]);
+    }
+
+    private static int index(long id, int mask) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+}
@@ -0,0 +1,23 @@
+package main.library;
+
+/**
+ * selects how the CSV imports of the library read their files
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public enum ImportMode {
+    /**
+     * binds every row to the annotated CSV models through OpenCSV
+     */
+    OPENCSV,
+    /**
+     * scans the bytes of the file and decodes the rows directly into books, copies and customers
+     */
+    STREAMING,
+    /**
+     * like STREAMING, but memory maps the file instead of reading it into buffers on the heap, meant for very large
+     * files
+     */
+    MAPPED
+}
@@ -0,0 +1,57 @@
+package main.library;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * holds the number of rows a CSV import has added to the library and how long it took
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class ImportStatistics {
+    private final long rows;
+    private final long elapsedNanos;
+
+    public ImportStatistics(long rows, long elapsedNanos) {
+        if (rows < 0 || elapsedNanos < 0)
+            throw new IllegalArgumentException("Rows and elapsed time must not be negative");
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * returns the number of imported rows
+     *
+     * @return imported rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * returns the time the import took in nanoseconds
+     *
+     * @return elapsed time
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * returns the import throughput
+     *
+     * @return rows per second
+     */
+    public double getRowsPerSecond() {
+        if (elapsedNanos == 0)
+            return 0;
+        return rows * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rows in %d ms (%.0f rows/s)", rows,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,557 @@
+package main.library;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * append-only journal of the changes made by lending, returning and deleting. Every record carries a sequence number
+ * and a CRC32 checksum. Records are first collected in memory and written and forced to disk in batches: the first
+ * thread that waits for its record becomes the leader and writes everything appended so far with a single fsync,
+ * threads arriving meanwhile wait for the leader and are usually covered by its batch or by the next one.
+ * A record is appended and forced to disk while the entities it changes are locked and before they change, so the
+ * order of the records is the order of the changes and no change is seen before it is durable. Once writing fails
+ * every later append fails as well. Appending does not create objects.
+ * The loans or returns of a batch are written as one record, so after a crash either all of them are replayed or none.
+ * Once a snapshot contains the records up to a sequence number they are dropped from the journal, the header keeps
+ * that number, so the journal stays as long as the changes since the last snapshot
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class Journal implements Closeable {
+    private static final int MAGIC = 0x4D4C4A4E; // "MLJN"
+    private static final int VERSION = 3;
+    // Journals of version 2 have no first sequence number in the header, of version 1 also no batch records
+    private static final int VERSION_WITHOUT_START = 2;
+    private static final int VERSION_WITHOUT_BATCHES = 1;
+    private static final int OLD_HEADER_SIZE = 2 * Integer.BYTES;
+    // Magic, version and the sequence number of the last record dropped from the journal
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Length and checksum in front of every record body
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_ISBN_BYTES = 4 * 1024;
+    /**
+     * maximum number of returns in one batch record
+     */
+    static final int MAX_BATCH_RETURNS = 4096;
+    private static final int MAX_RECORD_SIZE = 1 + Long.BYTES + Math.max(Short.BYTES + MAX_ISBN_BYTES,
+            Integer.BYTES + MAX_BATCH_RETURNS * 2 * Long.BYTES);
+
+    private static final byte LEND = 1;
+    private static final byte RETURN = 2;
+    private static final byte DELETE_CUSTOMER = 3;
+    private static final byte DELETE_BOOK_COPY = 4;
+    private static final byte DELETE_BOOK = 5;
+    private static final byte LEND_BATCH = 6;
+    private static final byte RETURN_BATCH = 7;
+
+    /**
+     * receives the records of the journal when it is replayed
+     */
+    interface Replay {
+        void lend(long customerId, long bookCopyId, long epochDay);
+
+        void returned(long customerId, long bookCopyId);
+
+        void deleteCustomer(long customerId);
+
+        void deleteBookCopy(long bookCopyId);
+
+        void deleteBook(String isbn);
+    }
+
+    private final Path path;
+    // Replaced when records are dropped, guarded by the flush lock from then on
+    private FileChannel channel;
+    private int headerSize;
+    // Guards active, sequence and failure
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Held by the leader while it writes and forces a batch
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long sequence;
+    private volatile long durable;
+    private IOException failure;
+
+    private Journal(Path path, FileChannel channel, int headerSize, long sequence) {
+        this.path = path;
+        this.channel = channel;
+        this.headerSize = headerSize;
+        this.sequence = sequence;
+        this.durable = sequence;
+    }
+
+    /**
+     * header and last record of a journal file read when opening it
+     */
+    private record Contents(int headerSize, long lastSequence) {
+    }
+
+    /**
+     * opens the journal at the given path or creates it. The records with a sequence number above the given one
+     * are handed to the check, which throws if one of them does not fit, and only if all of them pass they are
+     * replayed. A record that was only partly written before a crash is cut off. A journal from which records after
+     * the given sequence number were dropped can't be replayed
+     *
+     * @param path
+     * @param afterSequence sequence number of the last record already contained in the library
+     * @param check receives the records to replay first and must not change anything
+     * @param replay receives the records to replay once all of them were checked
+     * @return journal, new records are appended behind the existing ones
+     * @throws IOException
+     * @throws RuntimeException if the journal is damaged, does not fit or starts after afterSequence
+     */
+    static Journal open(Path path, long afterSequence, Replay check, Replay replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            Contents contents;
+            if (channel.size() < OLD_HEADER_SIZE) {
+                channel.truncate(0);
+                writeHeader(channel, afterSequence);
+                channel.force(true);
+                contents = new Contents(HEADER_SIZE, afterSequence);
+            } else {
+                replay(channel, afterSequence, check);
+                contents = replay(channel, afterSequence, replay);
+            }
+            channel.position(channel.size());
+            return new Journal(path, channel, contents.headerSize(),
+                    Math.max(afterSequence, contents.lastSequence()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long firstSequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(firstSequence)
+                .flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+    }
+
+    /**
+     * reads all complete records, hands the ones above afterSequence to the replay and cuts off a damaged end
+     *
+     * @return size of the header and sequence number of the last record
+     */
+    private static Contents replay(FileChannel channel, long afterSequence, Replay replay) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        channel.position(0);
+        if (!fill(channel, buffer, OLD_HEADER_SIZE) || buffer.getInt() != MAGIC)
+            throw new RuntimeException("File is not a library journal");
+        int version = buffer.getInt();
+        if (version != VERSION && version != VERSION_WITHOUT_START && version != VERSION_WITHOUT_BATCHES)
+            throw new RuntimeException("Unsupported journal version " + version);
+        int headerSize = OLD_HEADER_SIZE;
+        long last = 0;
+        if (version == VERSION) {
+            if (!fill(channel, buffer, Long.BYTES))
+                throw new RuntimeException("File is not a library journal");
+            headerSize = HEADER_SIZE;
+            last = buffer.getLong();
+            // The records the library is missing were dropped when a later snapshot was saved
+            if (last > afterSequence)
+                throw new RuntimeException("Journal starts after the snapshot of the library");
+        }
+        CRC32 crc = new CRC32();
+        long end = headerSize;
+        while (fill(channel, buffer, RECORD_HEADER_SIZE)) {
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length <= 0 || length > MAX_RECORD_SIZE || !fill(channel, buffer, RECORD_HEADER_SIZE + length))
+                break;
+            start = buffer.position();
+            ByteBuffer body = buffer.duplicate().position(start + RECORD_HEADER_SIZE)
+                    .limit(start + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(start + Integer.BYTES))
+                break;
+            buffer.position(start + RECORD_HEADER_SIZE + length);
+            end += RECORD_HEADER_SIZE + length;
+
+            byte type = body.get();
+            last = body.getLong();
+            if (last <= afterSequence)
+                continue;
+            switch (type) {
+            case LEND -> replay.lend(body.getLong(), body.getLong(), body.getLong());
+            case RETURN -> replay.returned(body.getLong(), body.getLong());
+            case DELETE_CUSTOMER -> replay.deleteCustomer(body.getLong());
+            case DELETE_BOOK_COPY -> replay.deleteBookCopy(body.getLong());
+            case DELETE_BOOK -> {
+                byte[] isbn = new byte[body.getShort() & 0xFFFF];
+                body.get(isbn);
+                replay.deleteBook(new String(isbn, StandardCharsets.UTF_8));
+            }
+            case LEND_BATCH -> {
+                long customerId = body.getLong();
+                long epochDay = body.getLong();
+                for (int count = body.getShort(); count > 0; count--)
+                    replay.lend(customerId, body.getLong(), epochDay);
+            }
+            case RETURN_BATCH -> {
+                for (int count = body.getInt(); count > 0; count--)
+                    replay.returned(body.getLong(), body.getLong());
+            }
+            default -> throw new RuntimeException("Unknown journal record " + type);
+            }
+        }
+        // Whatever follows the last complete record was only partly written before a crash
+        if (end < channel.size())
+            channel.truncate(end);
+        return new Contents(headerSize, last);
+    }
+
+    /**
+     * reads from the channel until the buffer holds at least the given number of bytes
+     *
+     * @return false if the channel ends before
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return true;
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * drops the records up to the given sequence number, which a snapshot on disk contains. The remaining records are
+     * copied behind a new header into a temporary file, which then replaces the journal, so after a crash either the
+     * old or the new journal is found. Appending goes on meanwhile, only writing to disk waits. All records up to the
+     * given number have to be on disk. A closed or failed journal is left as it is
+     *
+     * @param upToSequence sequence number of the last record to drop
+     * @throws IOException if the journal could not be replaced, it is still complete then
+     */
+    void dropUpTo(long upToSequence) throws IOException {
+        flushLock.lock();
+        try {
+            appendLock.lock();
+            try {
+                if (failure != null || !channel.isOpen())
+                    return;
+            } finally {
+                appendLock.unlock();
+            }
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (FileChannel copy = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeHeader(copy, upToSequence);
+                    long from = offsetAfter(upToSequence);
+                    long size = channel.size();
+                    for (long position = from; position < size;)
+                        position += channel.transferTo(position, size - position, copy);
+                    copy.force(true);
+                }
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            FileChannel previous = channel;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                headerSize = HEADER_SIZE;
+            } catch (IOException e) {
+                // The new journal is complete, but without a channel nothing more can be written to it
+                appendLock.lock();
+                try {
+                    failure = e;
+                } finally {
+                    appendLock.unlock();
+                }
+                throw e;
+            } finally {
+                previous.close();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * finds the first record after the given sequence number, the flush lock has to be held
+     *
+     * @return position of the record in the file, the end of the file if there is none
+     */
+    private long offsetAfter(long upToSequence) throws IOException {
+        // Read at positions, so that the channel keeps appending at its end
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        int peek = RECORD_HEADER_SIZE + 1 + Long.BYTES;
+        long size = channel.size();
+        long bufferStart = headerSize;
+        long record = headerSize;
+        while (record < size) {
+            if (record - bufferStart + peek > buffer.limit()) {
+                buffer.clear();
+                bufferStart = record;
+                while (buffer.hasRemaining())
+                    if (channel.read(buffer, bufferStart + buffer.position()) < 0)
+                        break;
+                buffer.flip();
+                if (buffer.limit() < peek)
+                    return size;
+            }
+            int at = (int) (record - bufferStart);
+            if (buffer.getLong(at + RECORD_HEADER_SIZE + 1) > upToSequence)
+                return record;
+            record += RECORD_HEADER_SIZE + buffer.getInt(at);
+        }
+        return size;
+    }
+
+    /**
+     * returns the sequence number of the last appended record
+     *
+     * @return sequence number
+     */
+    long getSequence() {
+        appendLock.lock();
+        try {
+            return sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    long appendLend(long customerId, long bookCopyId, long epochDay) {
+        return append(LEND, customerId, bookCopyId, epochDay, 3, null);
+    }
+
+    long appendReturn(long customerId, long bookCopyId) {
+        return append(RETURN, customerId, bookCopyId, 0, 2, null);
+    }
+
+    long appendDeleteCustomer(long customerId) {
+        return append(DELETE_CUSTOMER, customerId, 0, 0, 1, null);
+    }
+
+    long appendDeleteBookCopy(long bookCopyId) {
+        return append(DELETE_BOOK_COPY, bookCopyId, 0, 0, 1, null);
+    }
+
+    long appendDeleteBook(String isbn) {
+        byte[] bytes = isbn.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ISBN_BYTES)
+            throw new IllegalArgumentException("ISBN is too long for the journal");
+        return append(DELETE_BOOK, 0, 0, 0, 0, bytes);
+    }
+
+    /**
+     * appends one record for all loans of a customer made at once
+     *
+     * @param customerId
+     * @param bookCopyIds
+     * @param count number of ids in bookCopyIds, at most Customer.MAX_BOOK_COPIES
+     * @param epochDay lending date
+     * @return sequence number of the record
+     */
+    long appendLends(long customerId, long[] bookCopyIds, int count, long epochDay) {
+        if (count > Customer.MAX_BOOK_COPIES)
+            throw new IllegalArgumentException("Too many loans for one journal record");
+        return appendBatch(LEND_BATCH, customerId, epochDay, null, bookCopyIds, count);
+    }
+
+    /**
+     * appends one record for returns made at once, the i-th copy is returned by the i-th customer
+     *
+     * @param customerIds
+     * @param bookCopyIds
+     * @param count number of returns, at most MAX_BATCH_RETURNS
+     * @return sequence number of the record
+     */
+    long appendReturns(long[] customerIds, long[] bookCopyIds, int count) {
+        if (count > MAX_BATCH_RETURNS)
+            throw new IllegalArgumentException("Too many returns for one journal record");
+        return appendBatch(RETURN_BATCH, 0, 0, customerIds, bookCopyIds, count);
+    }
+
+    /**
+     * appends a batch record, either the loans of one customer or pairs of customer and copy
+     *
+     * @return sequence number of the record
+     */
+    private long appendBatch(byte type, long customerId, long epochDay, long[] customerIds, long[] bookCopyIds,
+            int count) {
+        int bodySize = 1 + Long.BYTES + (type == LEND_BATCH ? 2 * Long.BYTES + Short.BYTES + count * Long.BYTES
+                : Integer.BYTES + count * 2 * Long.BYTES);
+        while (true) {
+            long pending;
+            appendLock.lock();
+            try {
+                if (failure != null)
+                    throw new UncheckedIOException("Journal can't be written", failure);
+                if (active.remaining() >= RECORD_HEADER_SIZE + bodySize) {
+                    int start = begin(type);
+                    if (type == LEND_BATCH) {
+                        active.putLong(customerId).putLong(epochDay).putShort((short) count);
+                        for (int i = 0; i < count; i++)
+                            active.putLong(bookCopyIds[i]);
+                    } else {
+                        active.putInt(count);
+                        for (int i = 0; i < count; i++)
+                            active.putLong(customerIds[i]).putLong(bookCopyIds[i]);
+                    }
+                    return end(start);
+                }
+                pending = sequence;
+            } finally {
+                appendLock.unlock();
+            }
+            // The batch is full, write it before appending
+            sync(pending);
+        }
+    }
+
+    /**
+     * starts a record in the active buffer with the next sequence number, the append lock has to be held
+     *
+     * @return position of the record
+     */
+    private int begin(byte type) {
+        int start = active.position();
+        active.position(start + RECORD_HEADER_SIZE);
+        active.put(type).putLong(++sequence);
+        return start;
+    }
+
+    /**
+     * fills in the length and checksum of the record written since begin, the append lock has to be held
+     *
+     * @return sequence number of the record
+     */
+    private long end(int start) {
+        int end = active.position();
+        active.position(start + RECORD_HEADER_SIZE).limit(end);
+        checksum.reset();
+        checksum.update(active);
+        active.limit(active.capacity()).position(end);
+        active.putInt(start, end - start - RECORD_HEADER_SIZE).putInt(start + Integer.BYTES,
+                (int) checksum.getValue());
+        return sequence;
+    }
+
+    /**
+     * appends a record with up to three long values or a text to the batch in memory
+     *
+     * @return sequence number of the record
+     */
+    private long append(byte type, long first, long second, long third, int values, byte[] text) {
+        int bodySize = 1 + Long.BYTES + values * Long.BYTES + (text == null ? 0 : Short.BYTES + text.length);
+        while (true) {
+            long pending;
+            appendLock.lock();
+            try {
+                if (failure != null)
+                    throw new UncheckedIOException("Journal can't be written", failure);
+                if (active.remaining() >= RECORD_HEADER_SIZE + bodySize) {
+                    int start = begin(type);
+                    if (values > 0)
+                        active.putLong(first);
+                    if (values > 1)
+                        active.putLong(second);
+                    if (values > 2)
+                        active.putLong(third);
+                    if (text != null)
+                        active.putShort((short) text.length).put(text);
+                    return end(start);
+                }
+                pending = sequence;
+            } finally {
+                appendLock.unlock();
+            }
+            // The batch is full, write it before appending
+            sync(pending);
+        }
+    }
+
+    /**
+     * waits until the record with the given sequence number is on disk, writing the current batch if no other
+     * thread is doing so already
+     *
+     * @param recordSequence
+     */
+    void sync(long recordSequence) {
+        if (durable >= recordSequence)
+            return;
+        flushLock.lock();
+        try {
+            // The previous leader may have written the record meanwhile
+            if (durable >= recordSequence)
+                return;
+            ByteBuffer batch;
+            long last;
+            appendLock.lock();
+            try {
+                if (failure != null)
+                    throw new UncheckedIOException("Journal can't be written", failure);
+                batch = active;
+                active = flushing;
+                flushing = batch;
+                last = sequence;
+            } finally {
+                appendLock.unlock();
+            }
+            batch.flip();
+            try {
+                while (batch.hasRemaining())
+                    channel.write(batch);
+                channel.force(false);
+            } catch (IOException e) {
+                appendLock.lock();
+                try {
+                    failure = e;
+                } finally {
+                    appendLock.unlock();
+                }
+                throw new UncheckedIOException("Journal can't be written", e);
+            } finally {
+                batch.clear();
+            }
+            durable = last;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * writes all appended records and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync(getSequence());
+        } finally {
+            flushLock.lock();
+            try {
+                channel.close();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+}
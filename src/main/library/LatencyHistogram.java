@@ -0,0 +1,106 @@
+package main.library;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counts latencies in nanoseconds in buckets of logarithmic size, like an HDR histogram. Values below 32 have a bucket
+ * each, above that every power of two is split into 16 buckets, so a percentile is at most 1/16 above the real value.
+ * Recording only increments counters and never allocates
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Linear buckets 0 .. 31, then 16 buckets for each power of two up to 2^62
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * counts a latency, negative values are counted as 0
+     *
+     * @param nanos
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * returns the largest value counted in the bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * returns the latency that the given share of the counted latencies does not exceed
+     *
+     * @param quantile between 0 and 1
+     * @return latency in nanoseconds, 0 if nothing was counted
+     */
+    long getValueAt(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            total += snapshot[bucket] = counts.get(bucket);
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank)
+                return Math.min(highestValue(bucket), getMax());
+        }
+        return 0;
+    }
+
+    void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            counts.set(bucket, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,317 @@
+package main.library;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * keeps the lent book copies ordered by their lending date. There is a bucket for every day on which copies were
+ * lent, the buckets are sorted by day, so the copies lent in a range of days are found in O(log days) plus the copies
+ * found. Every copy of the library has a node of the index, created when the copy is added, the nodes of the copies
+ * lent on a day are linked into the bucket of the day. So lending and returning on a day whose bucket exists creates
+ * no objects. A bucket is removed when its last copy is returned, except the bucket of the last lending, which is
+ * usually used again soon. The number of copies lent on every day is also kept in a Fenwick tree, so the copies lent
+ * before a day are counted in O(log days) without visiting the buckets. The tree is split into blocks of days, a block
+ * is only created when a copy lent in its days is counted. The bucket of the last lending is not in the tree, its size
+ * is added when counting, so lending and returning today only change the bucket. Its copies are moved to the tree once
+ * another bucket is the last one.
+ * <p>
+ * Copies are added to and removed from the index under the write lock of the library, lent and returned under its read
+ * lock and the lock of the copy. Counting and iterating don't lock the index, a count may miss a copy lent or
+ * returned while counting, an iterator sees every bucket as it was when it reached it
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+final class LentDateIndex {
+    private static final long FIRST_DAY = LocalDate.of(1950, 1, 1).toEpochDay();
+    // Days up to 2099, copies lent on later days are only kept in their buckets
+    private static final int DAYS = (int) (LocalDate.of(2100, 1, 1).toEpochDay() - FIRST_DAY);
+    private static final int BLOCK_SHIFT = 9;
+    private static final int BLOCK_DAYS = 1 << BLOCK_SHIFT;
+    private static final int BLOCKS = (DAYS + BLOCK_DAYS - 1) >>> BLOCK_SHIFT;
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    // Node of every copy by id, only changed while adding and removing copies
+    private final IdMap<Node> nodes = new IdMap<>();
+    // Bucket of the last lending, usually today, so lending does not need to look it up
+    private final AtomicReference<Bucket> recent = new AtomicReference<>();
+    // Fenwick tree of the copies lent per block of days from FIRST_DAY on, index i stands for block i - 1
+    private final AtomicLongArray blockCounts = new AtomicLongArray(BLOCKS + 1);
+    // Fenwick tree of every block, index i stands for the day i - 1 of the block, created when first needed
+    private final AtomicReferenceArray<AtomicLongArray> dayCounts = new AtomicReferenceArray<>(BLOCKS);
+    // Copies lent before FIRST_DAY
+    private final AtomicLong countEarlier = new AtomicLong();
+
+    /**
+     * a copy and its place in the bucket of its lending date while it is lent
+     */
+    private static final class Node {
+        private final BookCopy bookCopy;
+        // Read by iterators without the lock of the bucket
+        private volatile Bucket bucket;
+        private Node previous;
+        private Node next;
+
+        private Node(BookCopy bookCopy) {
+            this.bookCopy = bookCopy;
+        }
+    }
+
+    /**
+     * the lent copies of one day, a doubly linked list of their nodes
+     */
+    private final class Bucket {
+        private final long day;
+        private Node first;
+        private int size;
+        // Set when the bucket is removed from the index, nothing is added to it afterwards
+        private boolean removed;
+        // Set when the copies of the bucket are counted in the tree, before only its size counts them
+        private boolean counted;
+
+        private Bucket(long day) {
+            this.day = day;
+        }
+
+        /**
+         * links the node into the bucket
+         *
+         * @return false if the bucket was removed from the index
+         */
+        private synchronized boolean add(Node node) {
+            if (removed)
+                return false;
+            node.bucket = this;
+            node.previous = null;
+            node.next = first;
+            if (first != null)
+                first.previous = node;
+            first = node;
+            size++;
+            if (counted)
+                count(day, 1);
+            return true;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized void remove(Node node) {
+            if (node.previous == null)
+                first = node.next;
+            else
+                node.previous.next = node.next;
+            if (node.next != null)
+                node.next.previous = node.previous;
+            node.bucket = null;
+            node.previous = null;
+            node.next = null;
+            size--;
+            if (counted)
+                count(day, -1);
+        }
+
+        /**
+         * counts the copies of the bucket in the tree, afterwards every copy lent or returned on it is counted there
+         */
+        private synchronized void countInTree() {
+            if (!counted) {
+                counted = true;
+                count(day, size);
+            }
+        }
+
+        private synchronized Node[] toArray() {
+            Node[] copies = new Node[size];
+            int i = 0;
+            for (Node node = first; node != null; node = node.next)
+                copies[i++] = node;
+            return copies;
+        }
+    }
+
+    /**
+     * adds a copy of the library to the index, a lent copy to the bucket of its lending date
+     *
+     * @param bookCopy
+     */
+    void add(BookCopy bookCopy) {
+        Node node = new Node(bookCopy);
+        nodes.put(bookCopy.getIdValue(), node);
+        if (bookCopy.isLent())
+            link(node);
+    }
+
+    /**
+     * removes a copy that leaves the library from the index
+     *
+     * @param bookCopy
+     */
+    void remove(BookCopy bookCopy) {
+        Node node = nodes.remove(bookCopy.getIdValue());
+        if (node != null)
+            unlink(node);
+    }
+
+    /**
+     * adds a copy that was just lent to the bucket of its lending date
+     *
+     * @param bookCopy
+     */
+    void markLent(BookCopy bookCopy) {
+        link(nodes.get(bookCopy.getIdValue()));
+    }
+
+    /**
+     * removes a copy that was just returned from the bucket of its lending date
+     *
+     * @param bookCopy
+     */
+    void markReturned(BookCopy bookCopy) {
+        unlink(nodes.get(bookCopy.getIdValue()));
+    }
+
+    private void link(Node node) {
+        long day = node.bookCopy.getLentDate().toEpochDay();
+        Bucket bucket = recent.get();
+        if (bucket == null || bucket.day != day || !bucket.add(node)) {
+            // A bucket found in the map may be removed before the node is linked into it, then it is looked up again
+            do {
+                bucket = buckets.computeIfAbsent(day, Bucket::new);
+            } while (!bucket.add(node));
+            // Every bucket replaced as the last one is counted in the tree exactly once, also when lending races
+            Bucket previous = recent.getAndSet(bucket);
+            if (previous != null && previous != bucket) {
+                previous.countInTree();
+                removeIfEmpty(previous);
+            }
+        }
+    }
+
+    private void unlink(Node node) {
+        Bucket bucket = node.bucket;
+        if (bucket == null)
+            return;
+        bucket.remove(node);
+        if (bucket != recent.get())
+            removeIfEmpty(bucket);
+    }
+
+    private void removeIfEmpty(Bucket bucket) {
+        synchronized (bucket) {
+            if (bucket.size == 0 && !bucket.removed) {
+                bucket.removed = true;
+                buckets.remove(bucket.day, bucket);
+            }
+        }
+    }
+
+    /**
+     * adds delta to the number of copies lent on the day
+     *
+     * @param day   epoch day
+     * @param delta
+     */
+    private void count(long day, long delta) {
+        if (day < FIRST_DAY) {
+            countEarlier.addAndGet(delta);
+        } else if (day - FIRST_DAY < DAYS) {
+            int offset = (int) (day - FIRST_DAY);
+            int block = offset >>> BLOCK_SHIFT;
+            for (int i = block + 1; i <= BLOCKS; i += i & -i)
+                blockCounts.addAndGet(i, delta);
+            AtomicLongArray counts = dayCounts.get(block);
+            if (counts == null) {
+                dayCounts.compareAndSet(block, null, new AtomicLongArray(BLOCK_DAYS + 1));
+                counts = dayCounts.get(block);
+            }
+            for (int i = (offset & BLOCK_DAYS - 1) + 1; i <= BLOCK_DAYS; i += i & -i)
+                counts.addAndGet(i, delta);
+        }
+    }
+
+    /**
+     * counts the copies lent before the given day. Days between 1950 and 2099 are counted in O(log days), for other
+     * days the buckets outside of these years are added up
+     *
+     * @param date
+     * @return number of copies
+     */
+    long countBefore(LocalDate date) {
+        long day = date.toEpochDay();
+        if (day <= FIRST_DAY)
+            return sum(buckets.headMap(day, false));
+        int days = (int) Math.min(day - FIRST_DAY, DAYS);
+        int block = days >>> BLOCK_SHIFT;
+        long count = countEarlier.get();
+        for (int i = block; i > 0; i -= i & -i)
+            count += blockCounts.get(i);
+        AtomicLongArray counts = block < BLOCKS ? dayCounts.get(block) : null;
+        if (counts != null)
+            for (int i = days & BLOCK_DAYS - 1; i > 0; i -= i & -i)
+                count += counts.get(i);
+        if (day > FIRST_DAY + DAYS)
+            count += sum(buckets.subMap(FIRST_DAY + DAYS, true, day, false));
+        // The last bucket is read after the tree, so a copy moved to the tree meanwhile is missed, not counted twice
+        Bucket last = recent.get();
+        if (last != null && last.day < Math.min(day, FIRST_DAY + DAYS))
+            synchronized (last) {
+                if (!last.counted)
+                    count += last.size;
+            }
+        return count;
+    }
+
+    private static long sum(Map<Long, Bucket> buckets) {
+        long count = 0;
+        for (Bucket bucket : buckets.values())
+            count += bucket.size();
+        return count;
+    }
+
+    /**
+     * iterates over the copies lent from the first date up to the day before the second date, oldest loans first.
+     * Only the copies of one day are held at a time. Copies returned after their day was reached are skipped
+     *
+     * @param from first lending date
+     * @param to   end of the range, not included
+     * @return iterator over the copies
+     */
+    Iterator<BookCopy> iterator(LocalDate from, LocalDate to) {
+        Iterator<Bucket> days = buckets.subMap(from.toEpochDay(), true, to.toEpochDay(), false).values().iterator();
+        return new Iterator<>() {
+            private Bucket bucket;
+            private Node[] copies = new Node[0];
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (true) {
+                    for (; next < copies.length; next++)
+                        if (copies[next].bookCopy.isLent() && copies[next].bucket == bucket)
+                            return true;
+                    if (!days.hasNext())
+                        return false;
+                    bucket = days.next();
+                    copies = bucket.toArray();
+                    next = 0;
+                }
+            }
+
+            @Override
+            public BookCopy next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return copies[next++].bookCopy;
+            }
+        };
+    }
+}
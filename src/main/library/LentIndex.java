@@ -0,0 +1,141 @@
+package main.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * keeps which book copies are lent and which are available. Every copy gets a slot, a bit per slot tells whether the
+ * copy is lent, so lending and returning only flip one bit and listing the copies in one state only visits the set
+ * bits. The slots are split into pages, so the index grows without copying the bits. Slots of removed copies are
+ * reused. The index keeps the slot of every copy by its id, the copies don't know their slot. Copies are added and
+ * removed under the write lock of the library, lent and returned under its read lock and the lock of the copy
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class LentIndex {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    private static final int WORDS_PER_PAGE = PAGE_SLOTS / Long.SIZE;
+
+    private BookCopy[][] copies = new BookCopy[0][];
+    // Slot of every copy by id, only changed while adding and removing
+    private final IdMap<Integer> slots = new IdMap<>();
+    // Slots holding a copy, only changed while adding and removing
+    private long[][] used = new long[0][];
+    // Slots holding a lent copy, changed concurrently while lending and returning
+    private AtomicLongArray[] lent = new AtomicLongArray[0];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int slotCount;
+    private int size;
+    // Lent copies, a LongAdder so that lending on many threads does not contend on one counter
+    private final LongAdder lentCount = new LongAdder();
+
+    /**
+     * gives the copy a slot, a lent copy is counted as lent
+     *
+     * @param bookCopy
+     */
+    void add(BookCopy bookCopy) {
+        int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : slotCount++;
+        int page = slot >>> PAGE_SHIFT;
+        if (page == copies.length) {
+            copies = Arrays.copyOf(copies, page + 1);
+            copies[page] = new BookCopy[PAGE_SLOTS];
+            used = Arrays.copyOf(used, page + 1);
+            used[page] = new long[WORDS_PER_PAGE];
+            lent = Arrays.copyOf(lent, page + 1);
+            lent[page] = new AtomicLongArray(WORDS_PER_PAGE);
+        }
+        copies[page][slot & PAGE_SLOTS - 1] = bookCopy;
+        used[page][word(slot)] |= 1L << slot;
+        slots.put(bookCopy.getIdValue(), slot);
+        size++;
+        if (bookCopy.isLent())
+            markLent(bookCopy);
+    }
+
+    /**
+     * frees the slot of the copy
+     *
+     * @param bookCopy
+     */
+    void remove(BookCopy bookCopy) {
+        int slot = slots.get(bookCopy.getIdValue());
+        markReturned(bookCopy);
+        int page = slot >>> PAGE_SHIFT;
+        copies[page][slot & PAGE_SLOTS - 1] = null;
+        used[page][word(slot)] &= ~(1L << slot);
+        slots.remove(bookCopy.getIdValue());
+        if (freeSlotCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlotCount);
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+    }
+
+    void markLent(BookCopy bookCopy) {
+        int slot = slots.get(bookCopy.getIdValue());
+        AtomicLongArray bits = lent[slot >>> PAGE_SHIFT];
+        int word = word(slot);
+        long mask = 1L << slot;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0)
+                return;
+        } while (!bits.compareAndSet(word, old, old | mask));
+        lentCount.increment();
+    }
+
+    void markReturned(BookCopy bookCopy) {
+        int slot = slots.get(bookCopy.getIdValue());
+        AtomicLongArray bits = lent[slot >>> PAGE_SHIFT];
+        int word = word(slot);
+        long mask = 1L << slot;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) == 0)
+                return;
+        } while (!bits.compareAndSet(word, old, old & ~mask));
+        lentCount.decrement();
+    }
+
+    long getLentCount() {
+        return lentCount.sum();
+    }
+
+    long getAvailableCount() {
+        return size - lentCount.sum();
+    }
+
+    /**
+     * returns the lent or the available copies
+     *
+     * @param lentCopies true for the lent, false for the available copies
+     * @return copies in slot order
+     */
+    List<BookCopy> list(boolean lentCopies) {
+        List<BookCopy> result = new ArrayList<>((int) Math.max(0, lentCopies ? getLentCount() : getAvailableCount()));
+        for (int page = 0; page < copies.length; page++) {
+            for (int word = 0; word < WORDS_PER_PAGE; word++) {
+                long bits = lent[page].get(word);
+                bits = lentCopies ? bits : used[page][word] & ~bits;
+                while (bits != 0) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    result.add(copies[page][word * Long.SIZE + bit]);
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int word(int slot) {
+        return (slot & PAGE_SLOTS - 1) >>> 6;
+    }
+}
@@ -2,239 +2,1787 @@ package main.library;
 
 import main.models.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.io.Reader;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
 
 /**
- * implements the functions of the library
+ * implements the functions of the library.
+ * The library can be used from several threads at once. Lookups and searches read the concurrent indexes without
+ * locking. Lending and returning lock only the customer and the copy involved, so desks working on different customers
+ * and copies run in parallel. Imports and deletes change the catalog and run exclusively
  *
  * @author Ahmad Al-Salameh (aa082)
  *
  */
 public class Library {
-    private final Set<BookCopy> bookCopies;
-    private final Set<Customer> customers;
-    private final Set<Book> books;
+    // Primary-key indexes: copy id -> copy, customer id -> customer, isbn -> book
+    private final Map<Long, BookCopy> bookCopies;
+    private final Map<Long, Customer> customers;
+    private final Map<String, Book> books;
+    // Secondary index: isbn -> ids of the copies of that book
+    private final Map<String, Set<Long>> bookCopyIdsByIsbn;
+    // Inverted index: normalized author name -> isbns of the books of that author
+    private final Map<String, Set<String>> isbnsByAuthor;
+    // Word index over the book titles for prefix and word search
+    private final TitleIndex titleIndex;
+    // Statistics: publisher -> number of copies of the books of that publisher, kept up to date with the indexes
+    private final Map<String, Long> bookCopyCountsByPublisher;
+    // Statistics: lent and available copies, updated while lending and returning
+    private final LentIndex lentIndex;
+    // Secondary index: lending date -> lent copies, updated while lending and returning
+    private final LentDateIndex lentDateIndex;
+    // Secondary index: shelf location in natural order -> copies on that shelf
+    private final ShelfIndex shelfIndex;
+    // Listing order: isbns, copy ids and customer ids sorted, for reading books, copies and customers page by page
+    private final NavigableSet<String> sortedIsbns;
+    private final NavigableSet<Long> sortedBookCopyIds;
+    private final NavigableSet<Long> sortedCustomerIds;
+    // Read-only views handed out by the getters, backed directly by the indexes above
+    private final Set<BookCopy> bookCopiesView;
+    private final Set<Customer> customersView;
+    private final Set<Book> booksView;
+    // Imports and deletes hold the write lock, lending and returning hold the read lock and their stripes
+    private final StampedLock catalogLock;
+    // Customer stripes are always locked before copy stripes, several stripes of one kind in ascending order
+    private final StripedLock customerLocks;
+    private final StripedLock bookCopyLocks;
+    // Lending date of new loans
+    private final Today today;
+    // Records lending, returning and deleting once opened, see openJournal
+    private volatile Journal journal;
+    // Sequence number of the last journal record contained in the library
+    private long journalSequence;
+    // Latencies and errors of the operations, disabled until enabled through getMetrics() or JMX
+    private final Metrics metrics;
+    // Advanced after every change of the books and copies, search results of an older epoch are out of date
+    private volatile long catalogEpoch;
+    // Results of the latest searches of Logic
+    private final SearchCache searchCache;
 
+    /**
+     * creates a library of the given books, copies and customers. The copies and customers are copied, lending and
+     * returning change only those of the library, never the given ones
+     *
+     * @param bookCopies
+     * @param customers
+     * @param books
+     */
     public Library(Set<BookCopy> bookCopies, Set<Customer> customers, Set<Book> books) {
-        this.bookCopies = new HashSet<>(Objects.requireNonNull(bookCopies));
-        this.customers = new HashSet<>(Objects.requireNonNull(customers));
-        this.books = new HashSet<>(Objects.requireNonNull(books));
+        Objects.requireNonNull(bookCopies);
+        Objects.requireNonNull(customers);
+        Objects.requireNonNull(books);
+        this.bookCopies = new ConcurrentHashMap<>();
+        this.customers = new ConcurrentHashMap<>();
+        this.books = new ConcurrentHashMap<>();
+        this.bookCopyIdsByIsbn = new ConcurrentHashMap<>();
+        this.isbnsByAuthor = new ConcurrentHashMap<>();
+        this.titleIndex = new TitleIndex();
+        this.bookCopyCountsByPublisher = new ConcurrentHashMap<>();
+        this.lentIndex = new LentIndex();
+        this.lentDateIndex = new LentDateIndex();
+        this.shelfIndex = new ShelfIndex();
+        this.sortedIsbns = new ConcurrentSkipListSet<>();
+        this.sortedBookCopyIds = new ConcurrentSkipListSet<>();
+        this.sortedCustomerIds = new ConcurrentSkipListSet<>();
+        // Lending changes copies and customers in place, so the library keeps its own
+        bookCopies.forEach(bookCopy -> addBookCopy(bookCopy.copy()));
+        customers.forEach(customer -> addCustomer(customer.copy()));
+        books.forEach(this::addBook);
+        this.bookCopiesView = new MapValuesView<>(this.bookCopies, BookCopy.class, BookCopy::getId);
+        this.customersView = new MapValuesView<>(this.customers, Customer.class, Customer::getId);
+        this.booksView = new MapValuesView<>(this.books, Book.class, Book::getIsbn);
+        this.catalogLock = new StampedLock();
+        int stripes = 16 * Runtime.getRuntime().availableProcessors();
+        this.customerLocks = new StripedLock(stripes);
+        this.bookCopyLocks = new StripedLock(stripes);
+        this.today = new Today(Clock.systemDefaultZone());
+        this.metrics = new Metrics();
+        this.searchCache = new SearchCache(this, SearchCache.DEFAULT_CAPACITY);
     }
 
     public Library() {
         this(Set.of(), Set.of(), Set.of());
     }
 
+    /**
+     * adds a book to the book index, to the books of each of its authors and to the title index. Copies added before
+     * the book are counted for its publisher now
+     *
+     * @param book
+     */
+    private void addBook(Book book) {
+        Set<Long> ids = bookCopyIdsByIsbn.get(book.getIsbn());
+        if (ids != null)
+            countBookCopies(book.getPublisher(), ids.size());
+        indexBook(book);
+        changedCatalog();
+    }
+
+    /**
+     * adds a book to the book index, to the books of each of its authors and to the title index. These indexes are
+     * concurrent, so an import adds its books from several threads
+     *
+     * @param book
+     */
+    private void indexBook(Book book) {
+        books.put(book.getIsbn(), book);
+        sortedIsbns.add(book.getIsbn());
+        titleIndex.add(book);
+        book.getAuthors().forEach(author -> isbnsByAuthor
+                .computeIfAbsent(SearchText.normalize(author), name -> ConcurrentHashMap.newKeySet()).add(book.getIsbn()));
+    }
+
+    /**
+     * removes a book from the book index, from the books of each of its authors and from the title index
+     *
+     * @param book
+     */
+    private void removeBook(Book book) {
+        books.remove(book.getIsbn());
+        sortedIsbns.remove(book.getIsbn());
+        Set<Long> ids = bookCopyIdsByIsbn.get(book.getIsbn());
+        if (ids != null)
+            countBookCopies(book.getPublisher(), -ids.size());
+        titleIndex.remove(book);
+        book.getAuthors().forEach(author -> {
+            String name = SearchText.normalize(author);
+            Set<String> isbns = isbnsByAuthor.get(name);
+            isbns.remove(book.getIsbn());
+            if (isbns.isEmpty())
+                isbnsByAuthor.remove(name);
+        });
+        changedCatalog();
+    }
+
+    /**
+     * adds a book copy to the copy index, to the copies of its ISBN, to the lent and shelf indexes and to the count of
+     * its publisher
+     *
+     * @param bookCopy
+     */
+    private void addBookCopy(BookCopy bookCopy) {
+        // A copy replacing one with the same id takes over its place in all indexes
+        BookCopy previous = bookCopies.get(bookCopy.getId());
+        if (previous != null)
+            removeBookCopy(previous);
+        bookCopies.put(bookCopy.getId(), bookCopy);
+        sortedBookCopyIds.add(bookCopy.getId());
+        lentIndex.add(bookCopy);
+        lentDateIndex.add(bookCopy);
+        shelfIndex.add(bookCopy);
+        bookCopyIdsByIsbn.computeIfAbsent(bookCopy.getIsbn(), isbn -> ConcurrentHashMap.newKeySet())
+                .add(bookCopy.getId());
+        Book book = books.get(bookCopy.getIsbn());
+        if (book != null)
+            countBookCopies(book.getPublisher(), 1);
+        changedCatalog();
+    }
+
+    /**
+     * adds the copies of an import chunk to the copy index, to the copies of their ISBNs and to the counts of their
+     * publishers. These indexes are concurrent, so the chunks are added from several threads
+     *
+     * @param chunk
+     * @param newBooks imported books, which may not be added yet
+     */
+    private void indexBookCopies(BookCopyChunk chunk, Map<String, Book> newBooks) {
+        for (BookCopy bookCopy : chunk.bookCopies()) {
+            bookCopies.put(bookCopy.getId(), bookCopy);
+            sortedBookCopyIds.add(bookCopy.getId());
+        }
+        chunk.idsByIsbn().forEach((isbn, ids) -> {
+            bookCopyIdsByIsbn.computeIfAbsent(isbn, key -> ConcurrentHashMap.newKeySet()).addAll(ids);
+            Book book = books.get(isbn);
+            countBookCopies((book != null ? book : newBooks.get(isbn)).getPublisher(), ids.size());
+        });
+    }
+
+    /**
+     * advances the catalog epoch, called after the change so that a search running during the change is out of date
+     */
+    private void changedCatalog() {
+        catalogEpoch++;
+    }
+
+    /**
+     * changes the number of copies of a publisher, a publisher without copies is removed
+     *
+     * @param publisher
+     * @param delta
+     */
+    private void countBookCopies(String publisher, long delta) {
+        if (delta != 0)
+            bookCopyCountsByPublisher.merge(publisher, delta,
+                    (count, added) -> count + added == 0 ? null : count + added);
+    }
+
+    /**
+     * marks a copy as lent on the given date, the caller holds the lock of the copy
+     *
+     * @param bookCopy
+     * @param date
+     */
+    private void markLent(BookCopy bookCopy, LocalDate date) {
+        bookCopy.markLent(date);
+        lentIndex.markLent(bookCopy);
+        lentDateIndex.markLent(bookCopy);
+    }
+
+    /**
+     * marks a copy as returned, the caller holds the lock of the copy
+     *
+     * @param bookCopy
+     */
+    private void markReturned(BookCopy bookCopy) {
+        bookCopy.markReturned();
+        lentIndex.markReturned(bookCopy);
+        lentDateIndex.markReturned(bookCopy);
+    }
+
+    /**
+     * adds a customer to the customer index
+     *
+     * @param customer
+     */
+    private void addCustomer(Customer customer) {
+        customers.put(customer.getId(), customer);
+        sortedCustomerIds.add(customer.getId());
+    }
+
+    /**
+     * removes a customer from the customer index
+     *
+     * @param customer
+     */
+    private void removeCustomer(Customer customer) {
+        customers.remove(customer.getId());
+        sortedCustomerIds.remove(customer.getId());
+    }
+
+    /**
+     * removes a book copy from the copy index, from the copies of its ISBN, from the lent and shelf indexes and from
+     * the count of its publisher
+     *
+     * @param bookCopy
+     */
+    private void removeBookCopy(BookCopy bookCopy) {
+        bookCopies.remove(bookCopy.getId());
+        sortedBookCopyIds.remove(bookCopy.getId());
+        lentIndex.remove(bookCopy);
+        lentDateIndex.remove(bookCopy);
+        shelfIndex.remove(bookCopy);
+        Book book = books.get(bookCopy.getIsbn());
+        if (book != null)
+            countBookCopies(book.getPublisher(), -1);
+        Set<Long> ids = bookCopyIdsByIsbn.get(bookCopy.getIsbn());
+        ids.remove(bookCopy.getId());
+        if (ids.isEmpty())
+            bookCopyIdsByIsbn.remove(bookCopy.getIsbn());
+        changedCatalog();
+    }
+
     private Book convert(CsvBookModel m) {
         Objects.requireNonNull(m);
-        if (books.stream().anyMatch(book -> book.getIsbn().contentEquals(m.getIsbn())))
-            throw new RuntimeException("Book with isbn already found");
-        return new Book(m.getIsbn(), m.getTitle(), m.getAuthors(), m.getYear(), m.getCity(), m.getPublisher(),
-                m.getEdition());
+        return checkNew(new Book(m.getIsbn(), m.getTitle(), m.getAuthors(), m.getYear(), m.getCity(),
+                m.getPublisher(), m.getEdition()));
     }
 
     private BookCopy convert(CsvBookCopyModel m) {
         Objects.requireNonNull(m);
-        if (!books.stream().anyMatch(book -> book.getIsbn().contentEquals(m.getBookIsbn())))
-            throw new RuntimeException("Book with given isbn not found when importing BookCopy");
-        return new BookCopy(m.getId(), m.getBookIsbn(), m.getShelfLocation(), m.getAddedToLibrary(), m.getLent(),
-                m.getLentDate());
+        return checkNew(new BookCopy(m.getId(), m.getBookIsbn(), m.getShelfLocation(), m.getAddedToLibrary(),
+                m.getLent(), m.getLentDate()));
     }
 
-    private Customer convert(CsvCustomerModel m) {
+    private Customer convert(CsvCustomerModel m, Map<Long, Long> borrowers) {
         Objects.requireNonNull(m);
-        if (customers.stream().anyMatch(customer -> customer.getId().equals(m.getId())))
-            throw new RuntimeException("Customer with id already found when importing Customer");
-        if (m.getBookIds().size() > 5)
+        if (m.getBookIds().size() > Customer.MAX_BOOK_COPIES)
             throw new RuntimeException("Customer has more than 5 books when import Customer");
+        return checkNew(new Customer(m.getId(), m.getName(), m.getFirstName(), m.getAddress(), m.getCity(),
+                m.getZipCode(), m.hasOverdraftFees(), m.hasPaidMonthlyContribution(), m.getBookIds()), borrowers);
+    }
+
+    /**
+     * checks that an imported book is not yet in the library
+     */
+    private Book checkNew(Book book) {
+        if (books.containsKey(book.getIsbn()))
+            throw new RuntimeException("Book with isbn already found");
+        return book;
+    }
+
+    /**
+     * checks that an imported book copy belongs to a known book and is not yet in the library
+     */
+    private BookCopy checkNew(BookCopy bookCopy) {
+        if (!books.containsKey(bookCopy.getIsbn()))
+            throw new RuntimeException("Book with given isbn not found when importing BookCopy");
+        if (bookCopies.containsKey(bookCopy.getId()))
+            throw new RuntimeException("BookCopy with id already found when importing BookCopy");
+        return bookCopy;
+    }
+
+    /**
+     * checks an imported customer. borrowers maps every copy id that is already lent by a customer to that
+     * customer's id, it is built once per import so that every row can be validated in constant time
+     */
+    private Customer checkNew(Customer customer, Map<Long, Long> borrowers) {
+        if (customers.containsKey(customer.getId()))
+            throw new RuntimeException("Customer with id already found when importing Customer");
+        Set<Long> bookIds = customer.getBookCopiesId();
         // Check if all of the bookIds are valid and lent
-        m.getBookIds().forEach(id -> {
-            if (!bookCopies.stream().anyMatch(book -> book.getId().equals(id) && book.isLent()))
+        bookIds.forEach(id -> {
+            BookCopy bookCopy = bookCopies.get(id);
+            if (bookCopy == null || !bookCopy.isLent())
                 throw new RuntimeException("Book couldn't be found or is not lent");
         });
         // Check if any other user has the same books lent
-        m.getBookIds().forEach(id -> {
-            if (customers.stream().anyMatch(customer -> customer.getBookCopiesId().contains(id)))
+        bookIds.forEach(id -> {
+            if (borrowers.containsKey(id))
                 throw new RuntimeException("Another customer has the book already lent");
         });
+        bookIds.forEach(id -> borrowers.put(id, customer.getId()));
+        return customer;
+    }
 
-        return new Customer(m.getId(), m.getName(), m.getFirstName(), m.getAddress(), m.getCity(), m.getZipCode(),
-                m.hasOverdraftFees(), m.hasPaidMonthlyContribution(), m.getBookIds());
-
+    /**
+     * imports the books of a CSV file through OpenCSV, see {@link #csvBook(Path, ImportMode)}
+     * @param pathToBook
+     * @return number of imported books and the import throughput
+     * @throws IOException
+     */
+    public ImportStatistics csvBook(Path pathToBook) throws IOException {
+        return csvBook(pathToBook, ImportMode.OPENCSV);
     }
+
     /**
      * uses a reader to register the path to the CSV which contains all the information about the books which are being imported.
-     * The reader then uses the book model to add all the imported books via iteration
+     * The reader then adds all the imported books via iteration
      * @param pathToBook
+     * @param mode how the file is read
+     * @return number of imported books and the import throughput
      * @throws IOException
      */
-    public void csvBook(Path pathToBook) throws IOException {
+    public ImportStatistics csvBook(Path pathToBook, ImportMode mode) throws IOException {
+        return measureImport(Operation.CSV_BOOK, () -> importBooks(pathToBook, mode));
+    }
+
+    /**
+     * imports the books, see csvBook
+     */
+    private ImportStatistics importBooks(Path pathToBook, ImportMode mode) throws IOException {
         Objects.requireNonNull(pathToBook);
-        try (Reader reader = Files.newBufferedReader(pathToBook)) {
-            CsvToBean<CsvBookModel> booksCsvBean = new CsvToBeanBuilder<CsvBookModel>(reader)
-                    .withType(CsvBookModel.class).withIgnoreLeadingWhiteSpace(true).withSeparator(';').build();
-            Iterator<CsvBookModel> bookIterator = booksCsvBean.iterator();
-            while (bookIterator.hasNext())
-                books.add(convert(bookIterator.next()));
+        Objects.requireNonNull(mode);
+        long stamp = catalogLock.writeLock();
+        try {
+            long start = System.nanoTime();
+            long rows = switch (mode) {
+                case OPENCSV -> readOpenCsv(pathToBook, CsvBookModel.class, m -> addBook(convert(m)));
+                case STREAMING -> readStreaming(new CsvBookReader(CsvScanner.open(pathToBook)),
+                        book -> addBook(checkNew(book)));
+                case MAPPED -> readStreaming(new CsvBookReader(CsvScanner.map(pathToBook)),
+                        book -> addBook(checkNew(book)));
+            };
+            return new ImportStatistics(rows, System.nanoTime() - start);
+        } finally {
+            catalogLock.unlockWrite(stamp);
         }
     }
+
+    /**
+     * imports the book copies of a CSV file through OpenCSV, see {@link #csvBookCopy(Path, ImportMode)}
+     * @param pathToBookCopy
+     * @return number of imported book copies and the import throughput
+     * @throws IOException
+     */
+    public ImportStatistics csvBookCopy(Path pathToBookCopy) throws IOException {
+        return csvBookCopy(pathToBookCopy, ImportMode.OPENCSV);
+    }
+
     /**
      * uses a reader to register the path to the CSV which contains all the information about the book copies which are being imported.
-     * The reader then uses the book copy model to add all the imported books via iteration
+     * The reader then adds all the imported book copies via iteration
      * @param pathToBookCopy
+     * @param mode how the file is read
+     * @return number of imported book copies and the import throughput
      * @throws IOException
      */
-    public void csvBookCopy(Path pathToBookCopy) throws IOException {
+    public ImportStatistics csvBookCopy(Path pathToBookCopy, ImportMode mode) throws IOException {
+        return measureImport(Operation.CSV_BOOK_COPY, () -> importBookCopies(pathToBookCopy, mode));
+    }
+
+    /**
+     * imports the book copies, see csvBookCopy
+     */
+    private ImportStatistics importBookCopies(Path pathToBookCopy, ImportMode mode) throws IOException {
         Objects.requireNonNull(pathToBookCopy);
-        try (Reader reader = Files.newBufferedReader(pathToBookCopy)) {
-            CsvToBean<CsvBookCopyModel> bookCopiesBean = new CsvToBeanBuilder<CsvBookCopyModel>(reader)
-                    .withType(CsvBookCopyModel.class).withIgnoreLeadingWhiteSpace(true).withSeparator(';').build();
-            Iterator<CsvBookCopyModel> bookCopiesIterator = bookCopiesBean.iterator();
-            while (bookCopiesIterator.hasNext())
-                bookCopies.add(convert(bookCopiesIterator.next()));
+        Objects.requireNonNull(mode);
+        long stamp = catalogLock.writeLock();
+        try {
+            long start = System.nanoTime();
+            long rows = switch (mode) {
+                case OPENCSV -> readOpenCsv(pathToBookCopy, CsvBookCopyModel.class, m -> addBookCopy(convert(m)));
+                case STREAMING -> readStreaming(new CsvBookCopyReader(CsvScanner.open(pathToBookCopy)),
+                        bookCopy -> addBookCopy(checkNew(bookCopy)));
+                case MAPPED -> readStreaming(new CsvBookCopyReader(CsvScanner.map(pathToBookCopy)),
+                        bookCopy -> addBookCopy(checkNew(bookCopy)));
+            };
+            return new ImportStatistics(rows, System.nanoTime() - start);
+        } finally {
+            catalogLock.unlockWrite(stamp);
         }
     }
 
+    /**
+     * imports the customers of a CSV file through OpenCSV, see {@link #csvCustomer(Path, ImportMode)}
+     * @param pathToCustomer
+     * @return number of imported customers and the import throughput
+     * @throws IOException
+     */
+    public ImportStatistics csvCustomer(Path pathToCustomer) throws IOException {
+        return csvCustomer(pathToCustomer, ImportMode.OPENCSV);
+    }
+
     /**
      * uses a reader to register the path to the CSV which contains all the information about the book customers which are being imported.
-     * The reader then uses the book customer to add all the imported books via iteration
+     * The reader then adds all the imported customers via iteration.
+     * Which copies are already lent by which customer is collected once before the rows are read
+     * @param pathToCustomer
+     * @param mode how the file is read
+     * @return number of imported customers and the import throughput
+     * @throws IOException
+     */
+    public ImportStatistics csvCustomer(Path pathToCustomer, ImportMode mode) throws IOException {
+        return measureImport(Operation.CSV_CUSTOMER, () -> importCustomers(pathToCustomer, mode));
+    }
+
+    /**
+     * imports the customers, see csvCustomer
+     */
+    private ImportStatistics importCustomers(Path pathToCustomer, ImportMode mode) throws IOException {
+        Objects.requireNonNull(pathToCustomer);
+        Objects.requireNonNull(mode);
+        long stamp = catalogLock.writeLock();
+        try {
+            long start = System.nanoTime();
+            Map<Long, Long> borrowers = new HashMap<>();
+            customers.values().forEach(
+                    customer -> customer.getBookCopiesId().forEach(id -> borrowers.put(id, customer.getId())));
+            long rows = switch (mode) {
+                case OPENCSV -> readOpenCsv(pathToCustomer, CsvCustomerModel.class,
+                        m -> addCustomer(convert(m, borrowers)));
+                case STREAMING -> readStreaming(new CsvCustomerReader(CsvScanner.open(pathToCustomer)),
+                        customer -> addCustomer(checkNew(customer, borrowers)));
+                case MAPPED -> readStreaming(new CsvCustomerReader(CsvScanner.map(pathToCustomer)),
+                        customer -> addCustomer(checkNew(customer, borrowers)));
+            };
+            return new ImportStatistics(rows, System.nanoTime() - start);
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * imports books, book copies and customers from three CSV files at once. The files are split at the same time and
+     * every chunk is read on the common fork-join pool, reading starts before the library is locked. Every chunk is
+     * checked as soon as it is read, against the library and the rows of the other chunks checked so far. A copy of a
+     * book that is not checked yet, or a customer lending a copy that is not checked yet, is looked up again once all
+     * chunks are checked, so no chunk waits for a whole file. The chunk tasks also sort the copies by shelf and group
+     * them by ISBN. Nothing is added to the library unless every row of the three files is valid, then the chunks are
+     * added in parallel to the concurrent indexes while the shelf and lent indexes are filled at once
+     * @param pathToBook
      * @param pathToBookCopy
+     * @param pathToCustomer
+     * @return number of rows imported from all three files and the import throughput
      * @throws IOException
      */
-    public void csvCustomer(Path pathToCustomer) throws IOException {
+    public ImportStatistics csvImport(Path pathToBook, Path pathToBookCopy, Path pathToCustomer) throws IOException {
+        return measureImport(Operation.CSV_IMPORT, () -> importAll(pathToBook, pathToBookCopy, pathToCustomer));
+    }
+
+    /**
+     * the copies of a chunk of an import with their share of the indexes, prepared by the task of the chunk
+     *
+     * @param bookCopies   copies of the chunk
+     * @param shelves      copies sorted by shelf
+     * @param idsByIsbn    ids of the copies grouped by ISBN
+     * @param pendingIsbns ISBNs of books that were not checked yet when the chunk was checked
+     */
+    private record BookCopyChunk(List<BookCopy> bookCopies, ShelfIndex.Run shelves, Map<String, List<Long>> idsByIsbn,
+            List<String> pendingIsbns) {
+    }
+
+    /**
+     * the customers of a chunk of an import
+     *
+     * @param customers          customers of the chunk
+     * @param pendingBookCopyIds ids of lent copies that were not checked yet when the chunk was checked
+     */
+    private record CustomerChunk(List<Customer> customers, List<Long> pendingBookCopyIds) {
+    }
+
+    /**
+     * imports the three files, see csvImport
+     */
+    private ImportStatistics importAll(Path pathToBook, Path pathToBookCopy, Path pathToCustomer) throws IOException {
+        Objects.requireNonNull(pathToBook);
+        Objects.requireNonNull(pathToBookCopy);
         Objects.requireNonNull(pathToCustomer);
-        try (Reader reader = Files.newBufferedReader(pathToCustomer)) {
-            CsvToBean<CsvCustomerModel> customersCsvBean = new CsvToBeanBuilder<CsvCustomerModel>(reader)
-                    .withType(CsvCustomerModel.class).withIgnoreLeadingWhiteSpace(true).withSeparator(';').build();
-            Iterator<CsvCustomerModel> customerIterator = customersCsvBean.iterator();
-            while (customerIterator.hasNext())
-                customers.add(convert(customerIterator.next()));
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int parallelism = pool.getParallelism();
+        long start = System.nanoTime();
+        // Rows are staged here and only added to the library once all of them are valid
+        Map<String, Book> newBooks = new ConcurrentHashMap<>();
+        Map<Long, BookCopy> newBookCopies = new ConcurrentHashMap<>();
+        Map<Long, Customer> newCustomers = new ConcurrentHashMap<>();
+        Map<Long, Long> borrowers = new ConcurrentHashMap<>();
+        // Reading does not touch the library, checking waits for the lock
+        CompletableFuture<Void> locked = new CompletableFuture<>();
+        CompletableFuture<List<List<Book>>> bookChunks = readChunks(pathToBook, CsvBookReader::new, locked,
+                chunk -> stageBooks(chunk, newBooks), pool, parallelism);
+        CompletableFuture<List<BookCopyChunk>> bookCopyChunks = readChunks(pathToBookCopy, CsvBookCopyReader::new,
+                locked, chunk -> stageBookCopies(chunk, newBooks, newBookCopies), pool, parallelism);
+        CompletableFuture<List<CustomerChunk>> customerChunks = readChunks(pathToCustomer, CsvCustomerReader::new,
+                locked, chunk -> stageCustomers(chunk, newBookCopies, newCustomers, borrowers), pool, parallelism);
+        long stamp = catalogLock.writeLock();
+        try {
+            try {
+                customers.values().forEach(
+                        customer -> customer.getBookCopiesId().forEach(id -> borrowers.put(id, customer.getId())));
+            } finally {
+                locked.complete(null);
+                // Even if a check fails all tasks have to finish before the lock is released
+                await(CompletableFuture.allOf(bookChunks, bookCopyChunks, customerChunks));
+            }
+
+            long rows = 0;
+            for (BookCopyChunk chunk : bookCopyChunks.join())
+                for (String isbn : chunk.pendingIsbns())
+                    if (!newBooks.containsKey(isbn))
+                        throw new RuntimeException("Book with given isbn not found when importing BookCopy");
+            for (CustomerChunk chunk : customerChunks.join())
+                for (long id : chunk.pendingBookCopyIds()) {
+                    BookCopy bookCopy = newBookCopies.get(id);
+                    if (bookCopy == null || !bookCopy.isLent())
+                        throw new RuntimeException("Book couldn't be found or is not lent");
+                }
+
+            List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (List<Book> chunk : bookChunks.join()) {
+                tasks.add(CompletableFuture.runAsync(() -> chunk.forEach(this::indexBook), pool));
+                rows += chunk.size();
+            }
+            for (BookCopyChunk chunk : bookCopyChunks.join()) {
+                tasks.add(CompletableFuture.runAsync(() -> indexBookCopies(chunk, newBooks), pool));
+                rows += chunk.bookCopies().size();
+            }
+            for (CustomerChunk chunk : customerChunks.join()) {
+                tasks.add(CompletableFuture.runAsync(() -> chunk.customers().forEach(this::addCustomer), pool));
+                rows += chunk.customers().size();
+            }
+            // The lent and shelf indexes can't be changed by several threads, they are filled here meanwhile
+            List<ShelfIndex.Run> shelves = new ArrayList<>();
+            for (BookCopyChunk chunk : bookCopyChunks.join()) {
+                for (BookCopy bookCopy : chunk.bookCopies()) {
+                    lentIndex.add(bookCopy);
+                    lentDateIndex.add(bookCopy);
+                }
+                shelves.add(chunk.shelves());
+            }
+            shelfIndex.addAll(shelves);
+            await(CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)));
+            changedCatalog();
+            return new ImportStatistics(rows, System.nanoTime() - start);
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * reads a file of an import in chunks and stages every chunk as soon as it is read and the library is locked
+     *
+     * @return stage completing with the staged chunks in file order once every chunk is staged
+     */
+    private static <T, R> CompletableFuture<List<R>> readChunks(Path path, CsvEntityReader.Factory<T> factory,
+            CompletableFuture<Void> locked, Function<List<T>, R> stage, Executor executor, int parallelism) {
+        return CsvChunkReader.read(path, factory, executor, parallelism).thenCompose(chunks -> {
+            List<CompletableFuture<R>> staged = chunks.stream()
+                    .map(chunk -> chunk.thenCombineAsync(locked, (entities, done) -> stage.apply(entities), executor))
+                    .toList();
+            return CompletableFuture.allOf(staged.toArray(CompletableFuture[]::new))
+                    .thenApply(done -> staged.stream().map(CompletableFuture::join).toList());
+        });
+    }
+
+    /**
+     * waits for the future and rethrows the exception it completed with
+     */
+    private static void await(CompletableFuture<?> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            if (e.getCause() instanceof RuntimeException runtime)
+                throw runtime;
+            throw e;
+        }
+    }
+
+    /**
+     * checks that the imported books are neither in the library nor imported twice
+     */
+    private List<Book> stageBooks(List<Book> chunk, Map<String, Book> newBooks) {
+        for (Book book : chunk)
+            if (books.containsKey(book.getIsbn()) || newBooks.putIfAbsent(book.getIsbn(), book) != null)
+                throw new RuntimeException("Book with isbn already found");
+        return chunk;
+    }
+
+    /**
+     * checks that the imported book copies are neither in the library nor imported twice, sorts them by shelf and
+     * groups them by ISBN. Copies of books neither in the library nor checked yet are marked as pending
+     */
+    private BookCopyChunk stageBookCopies(List<BookCopy> chunk, Map<String, Book> newBooks,
+            Map<Long, BookCopy> newBookCopies) {
+        Map<String, List<Long>> idsByIsbn = new HashMap<>();
+        List<String> pendingIsbns = new ArrayList<>();
+        for (BookCopy bookCopy : chunk) {
+            if (bookCopies.containsKey(bookCopy.getId())
+                    || newBookCopies.putIfAbsent(bookCopy.getId(), bookCopy) != null)
+                throw new RuntimeException("BookCopy with id already found when importing BookCopy");
+            List<Long> ids = idsByIsbn.get(bookCopy.getIsbn());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                idsByIsbn.put(bookCopy.getIsbn(), ids);
+                if (!books.containsKey(bookCopy.getIsbn()) && !newBooks.containsKey(bookCopy.getIsbn()))
+                    pendingIsbns.add(bookCopy.getIsbn());
+            }
+            ids.add(bookCopy.getId());
+        }
+        return new BookCopyChunk(chunk, ShelfIndex.sort(chunk), idsByIsbn, pendingIsbns);
+    }
+
+    /**
+     * checks the imported customers like {@link #checkNew(Customer, Map)}. Lent copies neither in the library nor
+     * checked yet are marked as pending
+     */
+    private CustomerChunk stageCustomers(List<Customer> chunk, Map<Long, BookCopy> newBookCopies,
+            Map<Long, Customer> newCustomers, Map<Long, Long> borrowers) {
+        List<Long> pendingBookCopyIds = new ArrayList<>();
+        for (Customer customer : chunk) {
+            if (customers.containsKey(customer.getId())
+                    || newCustomers.putIfAbsent(customer.getId(), customer) != null)
+                throw new RuntimeException("Customer with id already found when importing Customer");
+            for (Long id : customer.getBookCopiesId()) {
+                BookCopy bookCopy = bookCopies.containsKey(id) ? bookCopies.get(id) : newBookCopies.get(id);
+                if (bookCopy == null)
+                    pendingBookCopyIds.add(id);
+                else if (!bookCopy.isLent())
+                    throw new RuntimeException("Book couldn't be found or is not lent");
+                if (borrowers.putIfAbsent(id, customer.getId()) != null)
+                    throw new RuntimeException("Another customer has the book already lent");
+            }
+        }
+        return new CustomerChunk(chunk, pendingBookCopyIds);
+    }
+
+    @FunctionalInterface
+    private interface CsvRead {
+        ImportStatistics read() throws IOException;
+    }
+
+    /**
+     * runs an import and counts its latency and rows, or its error, in the metrics
+     *
+     * @return statistics of the import
+     */
+    private ImportStatistics measureImport(Operation operation, CsvRead csvRead) throws IOException {
+        long start = metrics.start();
+        try {
+            ImportStatistics statistics = csvRead.read();
+            metrics.finish(operation, start, statistics.getRows());
+            return statistics;
+        } catch (IOException | RuntimeException e) {
+            metrics.fail(operation, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * binds every row of the file to the given CSV model and hands it to the consumer
+     *
+     * @return number of rows
+     */
+    private <T> long readOpenCsv(Path path, Class<T> type, Consumer<T> consumer) throws IOException {
+        long rows = 0;
+        try (Reader reader = new BufferedReader(new InputStreamReader(CsvScanner.openInput(path),
+                StandardCharsets.UTF_8))) {
+            CsvToBean<T> bean = new CsvToBeanBuilder<T>(reader).withType(type).withIgnoreLeadingWhiteSpace(true)
+                    .withSeparator(';').build();
+            Iterator<T> iterator = bean.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * hands every entity of the reader to the consumer and closes the reader
+     *
+     * @return number of rows
+     */
+    private <T> long readStreaming(CsvEntityReader<T> reader, Consumer<T> consumer) throws IOException {
+        long rows = 0;
+        try (reader) {
+            for (T entity = reader.next(); entity != null; entity = reader.next()) {
+                consumer.accept(entity);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * writes all books to a CSV file in the layout {@link #csvBook(Path)} imports. The rows are written straight from
+     * the book index, so the memory needed does not grow with the number of books
+     * @param path
+     * @param gzip true if the file is compressed with gzip
+     * @return number of exported books
+     * @throws IOException
+     */
+    public long csvExportBooks(Path path, boolean gzip) throws IOException {
+        Objects.requireNonNull(path);
+        long stamp = catalogLock.readLock();
+        try (CsvWriter writer = CsvWriter.create(path, gzip)) {
+            writeBooks(writer);
+            return writer.getRows();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * writes all book copies to a CSV file in the layout {@link #csvBookCopy(Path)} imports. Copies may be lent and
+     * returned meanwhile, every row shows the copy at one point in time
+     * @param path
+     * @param gzip true if the file is compressed with gzip
+     * @return number of exported book copies
+     * @throws IOException
+     */
+    public long csvExportBookCopies(Path path, boolean gzip) throws IOException {
+        Objects.requireNonNull(path);
+        long stamp = catalogLock.readLock();
+        try (CsvWriter writer = CsvWriter.create(path, gzip)) {
+            writeBookCopies(writer);
+            return writer.getRows();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * writes all customers to a CSV file in the layout {@link #csvCustomer(Path)} imports. Customers may lend and
+     * return meanwhile, every row shows the customer at one point in time
+     * @param path
+     * @param gzip true if the file is compressed with gzip
+     * @return number of exported customers
+     * @throws IOException
+     */
+    public long csvExportCustomers(Path path, boolean gzip) throws IOException {
+        Objects.requireNonNull(path);
+        long stamp = catalogLock.readLock();
+        try (CsvWriter writer = CsvWriter.create(path, gzip)) {
+            writeCustomers(writer);
+            return writer.getRows();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * writes books, book copies and customers to three CSV files that {@link #csvImport(Path, Path, Path)} can import
+     * again. Lending and returning wait until all files are written, so the loans of the customers match the copies
+     * @param books
+     * @param bookCopies
+     * @param customers
+     * @param gzip true if the files are compressed with gzip
+     * @throws IOException
+     */
+    public void csvExport(Path books, Path bookCopies, Path customers, boolean gzip) throws IOException {
+        Objects.requireNonNull(books);
+        Objects.requireNonNull(bookCopies);
+        Objects.requireNonNull(customers);
+        long stamp = catalogLock.writeLock();
+        try {
+            try (CsvWriter writer = CsvWriter.create(books, gzip)) {
+                writeBooks(writer);
+            }
+            try (CsvWriter writer = CsvWriter.create(bookCopies, gzip)) {
+                writeBookCopies(writer);
+            }
+            try (CsvWriter writer = CsvWriter.create(customers, gzip)) {
+                writeCustomers(writer);
+            }
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+    }
+
+    private void writeBooks(CsvWriter writer) throws IOException {
+        writer.header("isbn", "title", "authors", "year", "city", "publisher", "edition");
+        for (Book book : books.values()) {
+            writer.field(book.getIsbn());
+            writer.field(book.getTitle());
+            writer.field(book.getAuthors(), ", ");
+            writer.field(book.getYearValue());
+            writer.field(book.getCity());
+            writer.field(book.getPublisher());
+            writer.field(book.getEditionValue());
+            writer.endRow();
+        }
+    }
+
+    private void writeBookCopies(CsvWriter writer) throws IOException {
+        writer.header("id", "bookIsbn", "shelfLocation", "addedToLibrary", "lent", "lentDate");
+        for (BookCopy bookCopy : bookCopies.values()) {
+            boolean lent;
+            LocalDate lentDate;
+            ReentrantLock bookCopyLock = bookCopyLocks.get(bookCopy.getIdValue());
+            bookCopyLock.lock();
+            try {
+                lent = bookCopy.isLent();
+                lentDate = bookCopy.getLentDate();
+            } finally {
+                bookCopyLock.unlock();
+            }
+            writer.field(bookCopy.getIdValue());
+            writer.field(bookCopy.getIsbn());
+            writer.field(bookCopy.getShelfLocation());
+            writer.field(bookCopy.getAddedToLibrary());
+            writer.field(lent);
+            writer.field(lentDate);
+            writer.endRow();
+        }
+    }
+
+    private void writeCustomers(CsvWriter writer) throws IOException {
+        writer.header("id", "name", "firstName", "address", "zipCode", "city", "hasOverdraftFees",
+                "hasPaidMonthlyContribution", "bookIds");
+        long[] bookCopyIds = new long[Customer.MAX_BOOK_COPIES];
+        for (Customer customer : customers.values()) {
+            writer.field(customer.getIdValue());
+            writer.field(customer.getName());
+            writer.field(customer.getFirstName());
+            writer.field(customer.getAddress());
+            writer.field(customer.getZipCode());
+            writer.field(customer.getCity());
+            writer.field(customer.hasOverdraftFees());
+            writer.field(customer.hasPaidMonthlyContribution());
+            writer.field(bookCopyIds, customer.copyBookCopyIds(bookCopyIds, 0), ',');
+            writer.endRow();
+        }
+    }
+
+    /**
+     * saves all books, book copies and customers to a binary snapshot file, see {@link #loadSnapshot(Path)}.
+     * Lending and returning only wait while the entities are collected, not while the file is written. Once the
+     * snapshot is on disk the records it contains are dropped from the open journal, so the journal only fits this
+     * snapshot or a later one
+     * @param path
+     * @throws IOException
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        Objects.requireNonNull(path);
+        Snapshot snapshot;
+        Journal current;
+        long stamp = catalogLock.writeLock();
+        try {
+            current = journal;
+            snapshot = Snapshot.capture(books.values(), bookCopies.values(), customers.values(),
+                    current != null ? current.getSequence() : journalSequence);
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+        snapshot.write(path);
+        if (current != null)
+            current.dropUpTo(snapshot.getJournalSequence());
+    }
+
+    /**
+     * creates a library from a snapshot file written by {@link #saveSnapshot(Path)}. The entities were valid when the
+     * snapshot was taken, so they are not checked again
+     * @param path
+     * @return library
+     * @throws IOException
+     */
+    public static Library loadSnapshot(Path path) throws IOException {
+        Objects.requireNonNull(path);
+        Snapshot snapshot = Snapshot.read(path);
+        Library library = new Library();
+        snapshot.getBooks().forEach(library::addBook);
+        snapshot.getBookCopies().forEach(library::addBookCopy);
+        snapshot.getCustomers().forEach(library::addCustomer);
+        library.journalSequence = snapshot.getJournalSequence();
+        return library;
+    }
+
+    /**
+     * opens the journal file at the given path or creates it. Changes recorded in the journal after the snapshot
+     * the library was loaded from are applied again, all of them are checked first, so a journal that does not fit
+     * leaves the library unchanged. Afterwards every lending, returning and deleting is written to the journal before
+     * it changes the library. Once the journal can't be written these changes fail and leave the library as it was,
+     * the last of them may still have reached the disk, so the library has to be loaded again from its snapshot and
+     * journal. Imports are not recorded, save a snapshot after them
+     *
+     * @param path
+     * @throws IOException
+     * @throws RuntimeException if a journal is already open or the journal does not fit the library
+     */
+    public void openJournal(Path path) throws IOException {
+        Objects.requireNonNull(path);
+        long stamp = catalogLock.writeLock();
+        try {
+            if (journal != null)
+                throw new RuntimeException("Journal is already open");
+            journal = Journal.open(path, journalSequence, new JournalCheck(), new JournalReplay());
+        } finally {
+            catalogLock.unlockWrite(stamp);
         }
     }
 
     /**
-     * returns the set of all existing book copies
+     * writes the remaining journal records to disk and closes the journal, later changes are not recorded
+     *
+     * @throws IOException
+     */
+    public void closeJournal() throws IOException {
+        Journal closed;
+        long stamp = catalogLock.writeLock();
+        try {
+            closed = journal;
+            if (closed == null)
+                return;
+            journal = null;
+            journalSequence = closed.getSequence();
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+        closed.close();
+    }
+
+    /**
+     * checks the records of the journal against the loaded entities without changing them, the changes of the records
+     * checked so far are kept beside the library. Every record has to fit, otherwise the journal belongs to another
+     * snapshot
+     */
+    private class JournalCheck implements Journal.Replay {
+        // Copies lent or returned by the checked records, true if lent
+        private final Map<Long, Boolean> lent = new HashMap<>();
+        // Lent copies of the customers the checked records lent to or returned from
+        private final Map<Long, Set<Long>> loans = new HashMap<>();
+        private final Set<Long> deletedCustomers = new HashSet<>();
+        private final Set<Long> deletedBookCopies = new HashSet<>();
+        private final Set<String> deletedBooks = new HashSet<>();
+
+        private boolean hasCustomer(long customerId) {
+            return customers.containsKey(customerId) && !deletedCustomers.contains(customerId);
+        }
+
+        private boolean hasBookCopy(long bookCopyId) {
+            return bookCopies.containsKey(bookCopyId) && !deletedBookCopies.contains(bookCopyId);
+        }
+
+        private boolean isLent(long bookCopyId) {
+            Boolean isLent = lent.get(bookCopyId);
+            return isLent != null ? isLent : bookCopies.get(bookCopyId).isLent();
+        }
+
+        private Set<Long> loans(long customerId) {
+            return loans.computeIfAbsent(customerId, id -> new HashSet<>(customers.get(id).getBookCopiesId()));
+        }
+
+        @Override
+        public void lend(long customerId, long bookCopyId, long epochDay) {
+            if (!hasCustomer(customerId) || !hasBookCopy(bookCopyId) || isLent(bookCopyId)
+                    || loans(customerId).size() == Customer.MAX_BOOK_COPIES)
+                throw new RuntimeException("Journal does not match the library");
+            loans(customerId).add(bookCopyId);
+            lent.put(bookCopyId, true);
+        }
+
+        @Override
+        public void returned(long customerId, long bookCopyId) {
+            if (!hasCustomer(customerId) || !hasBookCopy(bookCopyId) || !isLent(bookCopyId)
+                    || !loans(customerId).remove(bookCopyId))
+                throw new RuntimeException("Journal does not match the library");
+            lent.put(bookCopyId, false);
+        }
+
+        @Override
+        public void deleteCustomer(long customerId) {
+            if (!hasCustomer(customerId))
+                throw new RuntimeException("Journal does not match the library");
+            deletedCustomers.add(customerId);
+        }
+
+        @Override
+        public void deleteBookCopy(long bookCopyId) {
+            if (!hasBookCopy(bookCopyId))
+                throw new RuntimeException("Journal does not match the library");
+            deletedBookCopies.add(bookCopyId);
+        }
+
+        @Override
+        public void deleteBook(String isbn) {
+            if (!books.containsKey(isbn) || !deletedBooks.add(isbn))
+                throw new RuntimeException("Journal does not match the library");
+            deletedBookCopies.addAll(bookCopyIdsByIsbn.getOrDefault(isbn, Set.of()));
+        }
+    }
+
+    /**
+     * applies the records of the journal on top of the loaded entities once JournalCheck has accepted them
+     */
+    private class JournalReplay implements Journal.Replay {
+        @Override
+        public void lend(long customerId, long bookCopyId, long epochDay) {
+            Customer customer = customers.get(customerId);
+            BookCopy bookCopy = bookCopies.get(bookCopyId);
+            if (customer == null || bookCopy == null || bookCopy.isLent())
+                throw new RuntimeException("Journal does not match the library");
+            customer.addBookCopy(bookCopyId);
+            markLent(bookCopy, LocalDate.ofEpochDay(epochDay));
+        }
+
+        @Override
+        public void returned(long customerId, long bookCopyId) {
+            Customer customer = customers.get(customerId);
+            BookCopy bookCopy = bookCopies.get(bookCopyId);
+            if (customer == null || bookCopy == null || !bookCopy.isLent() || !customer.removeBookCopy(bookCopyId))
+                throw new RuntimeException("Journal does not match the library");
+            markReturned(bookCopy);
+        }
+
+        @Override
+        public void deleteCustomer(long customerId) {
+            Customer customer = customers.get(customerId);
+            if (customer == null)
+                throw new RuntimeException("Journal does not match the library");
+            removeCustomer(customer);
+        }
+
+        @Override
+        public void deleteBookCopy(long bookCopyId) {
+            BookCopy bookCopy = bookCopies.get(bookCopyId);
+            if (bookCopy == null)
+                throw new RuntimeException("Journal does not match the library");
+            removeBookCopy(bookCopy);
+        }
+
+        @Override
+        public void deleteBook(String isbn) {
+            Book book = books.get(isbn);
+            if (book == null)
+                throw new RuntimeException("Journal does not match the library");
+            getBookCopiesByIsbn(isbn).forEach(Library.this::removeBookCopy);
+            removeBook(book);
+        }
+    }
+
+    /**
+     * returns the metrics of the library. They are disabled until {@link Metrics#setEnabled(boolean)} is called, here
+     * or through JMX after {@link Metrics#register(String)}
+     *
+     * @return metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * returns the cache of the search results of Logic
+     *
+     * @return search cache
+     */
+    public SearchCache getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * returns the catalog epoch, which changes whenever books or copies are added or removed
+     *
+     * @return catalog epoch
+     */
+    long getCatalogEpoch() {
+        return catalogEpoch;
+    }
+
+    /**
+     * returns how many copies each publisher has in the library, ordered by the number of copies descending and
+     * then by publisher. The counts are kept up to date while copies and books are added and removed, so this only
+     * reads one count per publisher
+     *
+     * @return copies per publisher
+     */
+    public List<PublisherStatistics> getPublisherStatistics() {
+        long stamp = catalogLock.readLock();
+        try {
+            long total = 0;
+            for (long count : bookCopyCountsByPublisher.values())
+                total += count;
+            List<PublisherStatistics> statistics = new ArrayList<>(bookCopyCountsByPublisher.size());
+            for (Map.Entry<String, Long> entry : bookCopyCountsByPublisher.entrySet())
+                statistics.add(new PublisherStatistics(entry.getKey(), entry.getValue(), total));
+            statistics.sort(Comparator.comparingLong(PublisherStatistics::getBookCopies).reversed()
+                    .thenComparing(PublisherStatistics::getPublisher));
+            return statistics;
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns the book copies that are lent. Only the lent copies are visited, not all copies
+     *
+     * @return lent book copies
+     */
+    public List<BookCopy> getLentBookCopies() {
+        long stamp = catalogLock.readLock();
+        try {
+            return lentIndex.list(true);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns a page of the lent book copies in the order of their id. A page continues after the last copy of the
+     * previous page, so a copy added or lent between two pages is listed if its id comes after that copy
+     *
+     * @param pageSize  maximum number of copies on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of lent book copies
+     */
+    public Page<BookCopy> getLentBookCopies(final int pageSize, final String pageToken) {
+        return bookCopyPage(true, pageSize, pageToken);
+    }
+
+    /**
+     * returns the lent book copies that were lent before the given date, the oldest loans first. Only the copies lent
+     * before the date are visited, not all copies
+     *
+     * @param date
+     * @return book copies lent before the date
+     */
+    public List<BookCopy> getBookCopiesLentBefore(final LocalDate date) {
+        Objects.requireNonNull(date);
+        return getBookCopiesLentBetween(LocalDate.MIN, date);
+    }
+
+    /**
+     * returns the lent book copies that were lent from the first date up to the day before the second date, the
+     * oldest loans first
+     *
+     * @param from first lending date
+     * @param to   end of the range, not included
+     * @return book copies lent in the range
+     */
+    public List<BookCopy> getBookCopiesLentBetween(final LocalDate from, final LocalDate to) {
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(to);
+        List<BookCopy> lent = new ArrayList<>();
+        long stamp = catalogLock.readLock();
+        try {
+            lentDateIndex.iterator(from, to).forEachRemaining(lent::add);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+        return lent;
+    }
+
+    /**
+     * iterates over the lent book copies that were lent before the given date, the oldest loans first, for result
+     * sets too large for a list. Only the copies of one lending date are held at a time and the library is not
+     * locked, copies lent or returned meanwhile may or may not be seen
+     *
+     * @param date
+     * @return iterator over the book copies lent before the date
+     */
+    public Iterator<BookCopy> iterateBookCopiesLentBefore(final LocalDate date) {
+        Objects.requireNonNull(date);
+        return lentDateIndex.iterator(LocalDate.MIN, date);
+    }
+
+    /**
+     * counts the lent book copies that were lent before the given date without visiting them, in O(log days) for
+     * dates between 1950 and 2099
+     *
+     * @param date
+     * @return number of book copies lent before the date
+     */
+    public long countBookCopiesLentBefore(final LocalDate date) {
+        Objects.requireNonNull(date);
+        return lentDateIndex.countBefore(date);
+    }
+
+    /**
+     * returns a page of the book copies on the shelves from the first location up to the last location, in shelf order.
+     * Numbers in a location are compared by their value, A40 to A49 includes A41 but not A410, and the shelves below
+     * the last location, like A49.2, are included
+     *
+     * @param from      first shelf location
+     * @param to        last shelf location
+     * @param pageSize  maximum number of copies on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of book copies
+     */
+    public Page<BookCopy> getBookCopiesByShelfRange(final String from, final String to, final int pageSize,
+            final String pageToken) {
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(to);
+        long stamp = catalogLock.readLock();
+        try {
+            return shelfIndex.range(from, to, pageSize, pageToken);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns a page of the book copies whose shelf location starts with the prefix, in shelf order. A prefix ending in
+     * a number stands for that number, A4 finds A4 and A4.1 but not A41
+     *
+     * @param prefix    start of the shelf location
+     * @param pageSize  maximum number of copies on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of book copies
+     */
+    public Page<BookCopy> getBookCopiesByShelfPrefix(final String prefix, final int pageSize, final String pageToken) {
+        Objects.requireNonNull(prefix);
+        long stamp = catalogLock.readLock();
+        try {
+            return shelfIndex.prefix(prefix, pageSize, pageToken);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns a page of the book copies that are not lent, in the order of getLentBookCopies(int, String)
+     *
+     * @param pageSize  maximum number of copies on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of available book copies
+     */
+    public Page<BookCopy> getAvailableBookCopies(final int pageSize, final String pageToken) {
+        return bookCopyPage(false, pageSize, pageToken);
+    }
+
+    private Page<BookCopy> bookCopyPage(boolean lent, int pageSize, String pageToken) {
+        Page.checkPageSize(pageSize);
+        Set<Long> ids = sortedBookCopyIds;
+        if (pageToken != null) {
+            try {
+                ids = sortedBookCopyIds.tailSet(Long.parseLong(pageToken), false);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+        List<BookCopy> items = new ArrayList<>(Math.min(pageSize, 1024));
+        long stamp = catalogLock.readLock();
+        try {
+            for (Long id : ids) {
+                BookCopy bookCopy = bookCopies.get(id);
+                if (bookCopy.isLent() != lent)
+                    continue;
+                if (items.size() == pageSize)
+                    return new Page<>(items, items.get(pageSize - 1).getId().toString());
+                items.add(bookCopy);
+            }
+            return new Page<>(items, null);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns the book copies that are not lent. Only the available copies are visited, not all copies
+     *
+     * @return available book copies
+     */
+    public List<BookCopy> getAvailableBookCopies() {
+        long stamp = catalogLock.readLock();
+        try {
+            return lentIndex.list(false);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns the number of lent book copies without counting them. Like the number of available copies it is read
+     * under the catalog read lock, so both numbers refer to the same set of copies
+     *
+     * @return lent book copies
+     */
+    public long getLentBookCopyCount() {
+        long stamp = catalogLock.readLock();
+        try {
+            return lentIndex.getLentCount();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns the number of book copies that are not lent without counting them
+     *
+     * @return available book copies
+     */
+    public long getAvailableBookCopyCount() {
+        long stamp = catalogLock.readLock();
+        try {
+            return lentIndex.getAvailableCount();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns a read-only view of all existing book copies. The view is not copied, it reflects later changes
+     * of the library
      *
      * @return set of book copies
      */
     public Set<BookCopy> getBookCopies() {
-        return Set.copyOf(bookCopies);
+        return bookCopiesView;
     }
 
     /**
-     * returns the set of customers
+     * returns a read-only view of all customers. The view is not copied, it reflects later changes of the library
      *
      * @return set of customers
      */
     public Set<Customer> getCustomers() {
-        return Set.copyOf(customers);
+        return customersView;
     }
 
+    /**
+     * returns a read-only view of all books. The view is not copied, it reflects later changes of the library
+     *
+     * @return set of books
+     */
     public Set<Book> getBooks() {
-        return Set.copyOf(books);
+        return booksView;
+    }
+
+    /**
+     * returns a page of the books in the order of their ISBN
+     *
+     * @param pageSize  maximum number of books on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of books
+     */
+    public Page<Book> getBooks(final int pageSize, final String pageToken) {
+        Page.checkPageSize(pageSize);
+        Set<String> isbns = pageToken == null ? sortedIsbns : sortedIsbns.tailSet(pageToken, false);
+        List<Book> items = new ArrayList<>(Math.min(pageSize, 1024));
+        long stamp = catalogLock.readLock();
+        try {
+            for (String isbn : isbns) {
+                if (items.size() == pageSize)
+                    return new Page<>(items, items.get(pageSize - 1).getIsbn());
+                items.add(books.get(isbn));
+            }
+            return new Page<>(items, null);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns a page of the customers in the order of their id
+     *
+     * @param pageSize  maximum number of customers on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of customers
+     */
+    public Page<Customer> getCustomers(final int pageSize, final String pageToken) {
+        Page.checkPageSize(pageSize);
+        Set<Long> ids = sortedCustomerIds;
+        if (pageToken != null) {
+            try {
+                ids = sortedCustomerIds.tailSet(Long.parseLong(pageToken), false);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+        List<Customer> items = new ArrayList<>(Math.min(pageSize, 1024));
+        long stamp = catalogLock.readLock();
+        try {
+            for (Long id : ids) {
+                if (items.size() == pageSize)
+                    return new Page<>(items, items.get(pageSize - 1).getId().toString());
+                items.add(customers.get(id));
+            }
+            return new Page<>(items, null);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     /**
      * Firstly the method checks whether the given copy is already lent or not.
-     * If not a new object, the "new" book copy with updated values for shelf-location and "isLent" etc. will be created, also a "new" customer
-     * with altered values of the significant attributes will be created. The old book copy and customer will be removed and the new ones
-     * will be added. Therefore the book copy has been lent.
+     * If not the copy is marked as lent on the current date and its id is added to the lent book copies of the customer.
+     * Both are updated in place under the locks of the customer and the copy, so lending neither creates new objects
+     * nor touches other customers or copies. Therefore the book copy has been lent.
+     * With an open journal the loan is written to disk before the copy and the customer change, if it can't be
+     * written nothing changes, see openJournal.
      *
      * @param customer id
      * @param book     id
      * @throws RuntimeException
      */
     public void lendBook(final Long customerId, final Long bookId) {
+        long start = metrics.start();
+        try {
+            lendCopy(customerId, bookId);
+        } catch (RuntimeException e) {
+            metrics.fail(Operation.LEND_BOOK, start, e);
+            throw e;
+        }
+        metrics.finish(Operation.LEND_BOOK, start);
+    }
+
+    /**
+     * lends the copy, see lendBook
+     */
+    private void lendCopy(final Long customerId, final Long bookId) {
         Objects.requireNonNull(customerId);
         Objects.requireNonNull(bookId);
-        Customer customer = getCustomer(customerId).orElseThrow(() -> new RuntimeException("Customer not found"));
-        BookCopy bookCopy = getBookCopy(bookId).orElseThrow(() -> new RuntimeException("BookCopy not found"));
-        if (bookCopy.isLent())
-            throw new RuntimeException("Book is already lent");
-
-        // Remove customer with outdated data
-        customers.remove(customer);
-        // Book copy gets updated data
-        Set<Long> copiesId = new HashSet<>(customer.getBookCopiesId());
-        var updatedBook = new BookCopy(bookCopy.getId(), bookCopy.getIsbn(), bookCopy.getShelfLocation(),
-                bookCopy.getAddedToLibrary(), true, LocalDate.now());
-        copiesId.add(updatedBook.getId());
+        ReentrantLock customerLock = customerLocks.get(customerId);
+        ReentrantLock bookCopyLock = bookCopyLocks.get(bookId);
+        long stamp = catalogLock.readLock();
+        customerLock.lock();
+        bookCopyLock.lock();
+        Journal current = journal;
+        try {
+            Customer customer = customers.get(customerId);
+            if (customer == null)
+                throw new RuntimeException("Customer not found");
+            BookCopy bookCopy = bookCopies.get(bookId);
+            if (bookCopy == null)
+                throw new RuntimeException("BookCopy not found");
+            if (bookCopy.isLent())
+                throw new RuntimeException("Book is already lent");
 
-        customers.add(new Customer(customer.getId(), customer.getName(), customer.getFirstName(), customer.getAddress(),
-                customer.getZipCode(), customer.getCity(), customer.hasOverdraftFees(),
-                customer.hasPaidMonthlyContribution(), copiesId));
-
-        // "Old" book copy and customer get removed
-        bookCopies.remove(bookCopy);
-        bookCopies.add(updatedBook);
+            if (customer.getBookCopyCount() == Customer.MAX_BOOK_COPIES)
+                throw new RuntimeException("Customer has already " + Customer.MAX_BOOK_COPIES + " books");
 
+            // The loan is on disk before it can be seen, if the journal fails nothing changes
+            LocalDate date = today.get();
+            if (current != null)
+                current.sync(current.appendLend(customerId, bookId, date.toEpochDay()));
+            customer.addBookCopy(bookId);
+            markLent(bookCopy, date);
+        } finally {
+            bookCopyLock.unlock();
+            customerLock.unlock();
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     /**
-     * Firstly the method checks whether the given copy is already lent or not.
-     * If not a new object, the "new" book copy with updated values for shelf-location and "isLent" etc. will be created, also a "new" customer
-     * with altered values of the significant attributes will be created. The old book copy and customer will be removed and the new ones
-     * will be added. therefore the book copy has been returned.
+     * Firstly the method checks whether the given copy is lent by the given customer.
+     * If so the copy is marked as not lent and its id is removed from the lent book copies of the customer.
+     * Both are updated in place under the locks of the customer and the copy, so returning neither creates new objects
+     * nor touches other customers or copies. Therefore the book copy has been returned.
+     * With an open journal the return is written to disk before the copy and the customer change, if it can't be
+     * written nothing changes, see openJournal.
      *
      * @param customer id
      * @param book     id
      * @throws RuntimeException
      */
     public void returnBook(final Long customerId, final Long bookId) {
+        long start = metrics.start();
+        try {
+            returnCopy(customerId, bookId);
+        } catch (RuntimeException e) {
+            metrics.fail(Operation.RETURN_BOOK, start, e);
+            throw e;
+        }
+        metrics.finish(Operation.RETURN_BOOK, start);
+    }
+
+    /**
+     * returns the copy, see returnBook
+     */
+    private void returnCopy(final Long customerId, final Long bookId) {
         Objects.requireNonNull(customerId);
         Objects.requireNonNull(bookId);
-        Customer customer = getCustomer(customerId).orElseThrow(() -> new RuntimeException("Customer not found"));
-        BookCopy bookCopy = getBookCopy(bookId).orElseThrow(() -> new RuntimeException("BookCopy not found"));
-        if (!bookCopy.isLent())
-            throw new RuntimeException("Book is not lent");
-        if (!customer.getBookCopiesId().contains(bookCopy.getId()))
-            throw new RuntimeException("This customer doesnt have the book");
-        // Remove copy with outdated data
-        bookCopies.remove(bookCopy);
-        BookCopy updatedBook = new BookCopy(bookCopy.getId(), bookCopy.getIsbn(), bookCopy.getShelfLocation(),
-                bookCopy.getAddedToLibrary(), false, bookCopy.getLentDate());
-        // Old customer gets removed, new customer and copy added
-        bookCopies.add(updatedBook);
-        customers.remove(customer);
-        Set<Long> copies = new HashSet<>(customer.getBookCopiesId());
-        copies.remove(bookCopy.getId());
-        customers.add(new Customer(customer.getId(), customer.getName(), customer.getFirstName(), customer.getAddress(),
-                customer.getZipCode(), customer.getCity(), customer.hasOverdraftFees(),
-                customer.hasPaidMonthlyContribution(), copies));
-    }
-
-    /**
-     * searches for a customer with a given ID and returns that customer
+        ReentrantLock customerLock = customerLocks.get(customerId);
+        ReentrantLock bookCopyLock = bookCopyLocks.get(bookId);
+        long stamp = catalogLock.readLock();
+        customerLock.lock();
+        bookCopyLock.lock();
+        Journal current = journal;
+        try {
+            Customer customer = customers.get(customerId);
+            if (customer == null)
+                throw new RuntimeException("Customer not found");
+            BookCopy bookCopy = bookCopies.get(bookId);
+            if (bookCopy == null)
+                throw new RuntimeException("BookCopy not found");
+            if (!bookCopy.isLent())
+                throw new RuntimeException("Book is not lent");
+            if (!customer.hasBookCopy(bookId))
+                throw new RuntimeException("This customer doesnt have the book");
+
+            // The return is on disk before it can be seen, if the journal fails nothing changes
+            if (current != null)
+                current.sync(current.appendReturn(customerId, bookId));
+            customer.removeBookCopy(bookId);
+            markReturned(bookCopy);
+        } finally {
+            bookCopyLock.unlock();
+            customerLock.unlock();
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * lends several copies to one customer at once. The customer is looked up and locked once and the copies are
+     * locked together, then either all copies are lent or, if one of them can't be, none. Afterwards the customer may
+     * not have more than Customer.MAX_BOOK_COPIES copies. With an open journal the loans are recorded as one entry,
+     * which is on disk before the copies change.
+     *
+     * @param customerId
+     * @param bookCopyIds ids of the copies, each at most once
+     * @throws RuntimeException
+     */
+    public void lendBooks(final Long customerId, final Collection<Long> bookCopyIds) {
+        Objects.requireNonNull(customerId);
+        Objects.requireNonNull(bookCopyIds);
+        metrics.measure(Operation.LEND_BOOKS, () -> lendCopies(customerId, bookCopyIds));
+    }
+
+    /**
+     * lends the copies, see lendBooks
+     */
+    private void lendCopies(final Long customerId, final Collection<Long> bookCopyIds) {
+        if (bookCopyIds.size() > Customer.MAX_BOOK_COPIES)
+            throw new RuntimeException("Customer would have more than " + Customer.MAX_BOOK_COPIES + " books");
+        long[] ids = bookCopyIds.stream().mapToLong(Long::longValue).toArray();
+        if (Arrays.stream(ids).distinct().count() < ids.length)
+            throw new RuntimeException("BookCopy is listed twice");
+        if (ids.length == 0)
+            return;
+        ReentrantLock customerLock = customerLocks.get(customerId);
+        long stamp = catalogLock.readLock();
+        customerLock.lock();
+        int[] bookCopyStripes = bookCopyLocks.lock(ids, ids.length);
+        Journal current = journal;
+        try {
+            Customer customer = customers.get(customerId);
+            if (customer == null)
+                throw new RuntimeException("Customer not found");
+            if (customer.getBookCopyCount() + ids.length > Customer.MAX_BOOK_COPIES)
+                throw new RuntimeException("Customer would have more than " + Customer.MAX_BOOK_COPIES + " books");
+            BookCopy[] copies = new BookCopy[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                copies[i] = bookCopies.get(ids[i]);
+                if (copies[i] == null)
+                    throw new RuntimeException("BookCopy not found");
+                if (copies[i].isLent())
+                    throw new RuntimeException("Book is already lent");
+            }
+
+            // Everything is checked, from here on nothing can fail except the journal, which comes first
+            LocalDate date = today.get();
+            if (current != null)
+                current.sync(current.appendLends(customerId, ids, ids.length, date.toEpochDay()));
+            for (int i = 0; i < ids.length; i++) {
+                customer.addBookCopy(ids[i]);
+                markLent(copies[i], date);
+            }
+        } finally {
+            bookCopyLocks.unlock(bookCopyStripes);
+            customerLock.unlock();
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * returns many copies at once, for example the contents of a drop box. Customers and copies are each looked up
+     * once and locked together, then either all copies are returned or, if one of them can't be, none. With an open
+     * journal the returns are recorded as one entry, which is on disk before the copies change, so with a journal at
+     * most Journal.MAX_BATCH_RETURNS copies fit in one call.
+     *
+     * @param customerIdsByBookCopyId id of every returned copy mapped to the id of the customer who lent it
+     * @throws RuntimeException if a journal is open and more than Journal.MAX_BATCH_RETURNS copies are returned at once
+     */
+    public void returnBooks(final Map<Long, Long> customerIdsByBookCopyId) {
+        Objects.requireNonNull(customerIdsByBookCopyId);
+        metrics.measure(Operation.RETURN_BOOKS, () -> returnCopies(customerIdsByBookCopyId));
+    }
+
+    /**
+     * returns the copies, see returnBooks
+     */
+    private void returnCopies(final Map<Long, Long> customerIdsByBookCopyId) {
+        int count = customerIdsByBookCopyId.size();
+        if (count == 0)
+            return;
+        long[] ids = new long[count];
+        long[] customerIds = new long[count];
+        int next = 0;
+        for (Map.Entry<Long, Long> entry : customerIdsByBookCopyId.entrySet()) {
+            ids[next] = entry.getKey();
+            customerIds[next++] = entry.getValue();
+        }
+        long stamp = catalogLock.readLock();
+        int[] customerStripes = customerLocks.lock(customerIds, count);
+        int[] bookCopyStripes = bookCopyLocks.lock(ids, count);
+        Journal current = journal;
+        try {
+            // The journal writes all returns as one record, which has to fit into its buffer
+            if (current != null && count > Journal.MAX_BATCH_RETURNS)
+                throw new RuntimeException("At most " + Journal.MAX_BATCH_RETURNS + " books can be returned at once");
+            Customer[] borrowers = new Customer[count];
+            BookCopy[] copies = new BookCopy[count];
+            for (int i = 0; i < count; i++) {
+                borrowers[i] = customers.get(customerIds[i]);
+                if (borrowers[i] == null)
+                    throw new RuntimeException("Customer not found");
+                copies[i] = bookCopies.get(ids[i]);
+                if (copies[i] == null)
+                    throw new RuntimeException("BookCopy not found");
+                if (!copies[i].isLent())
+                    throw new RuntimeException("Book is not lent");
+                if (!borrowers[i].hasBookCopy(ids[i]))
+                    throw new RuntimeException("This customer doesnt have the book");
+            }
+
+            if (current != null)
+                current.sync(current.appendReturns(customerIds, ids, count));
+            for (int i = 0; i < count; i++) {
+                borrowers[i].removeBookCopy(ids[i]);
+                markReturned(copies[i]);
+            }
+        } finally {
+            bookCopyLocks.unlock(bookCopyStripes);
+            customerLocks.unlock(customerStripes);
+            catalogLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * looks up the customer with a given ID in the customer index and returns that customer
      *
      * @param customer id
      * @return customer
      */
-    private Optional<Customer> getCustomer(final Long ID) {
+    public Optional<Customer> getCustomer(final Long ID) {
         Objects.requireNonNull(ID);
-        return customers.stream().filter(c -> c.getId().equals(ID)).findAny();
+        return Optional.ofNullable(customers.get(ID));
     }
 
     /**
-     * searches for a book copy with a given ID and returns that copy
+     * looks up the book copy with a given ID in the copy index and returns that copy
      *
      * @param book copy id
      * @return book copy
      */
-    private Optional<BookCopy> getBookCopy(final Long ID) {
+    public Optional<BookCopy> getBookCopy(final Long ID) {
         Objects.requireNonNull(ID);
-        return bookCopies.stream().filter(book -> book.getId().equals(ID)).findAny();
+        return Optional.ofNullable(bookCopies.get(ID));
+    }
+
+    /**
+     * looks up the book with a given ISBN in the book index and returns that book
+     *
+     * @param isbn
+     * @return book
+     */
+    public Optional<Book> getBook(final String isbn) {
+        Objects.requireNonNull(isbn);
+        return Optional.ofNullable(books.get(isbn));
+    }
+
+    /**
+     * returns all copies of the book with the given ISBN, using the ISBN index of the library
+     *
+     * @param isbn
+     * @return copies of the book, empty if there are none
+     */
+    public Set<BookCopy> getBookCopiesByIsbn(final String isbn) {
+        Objects.requireNonNull(isbn);
+        return bookCopyIdsByIsbn.getOrDefault(isbn, Set.of()).stream().map(bookCopies::get)
+                .filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * returns all books written by the given author, using the author index of the library.
+     * Case, diacritics and surrounding whitespace of the name are ignored
+     *
+     * @param author
+     * @return books of the author, empty if there are none
+     */
+    public Set<Book> getBooksByAuthor(final String author) {
+        Objects.requireNonNull(author);
+        return isbnsByAuthor.getOrDefault(SearchText.normalize(author), Set.of()).stream().map(books::get)
+                .filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * searches the books by title using the title index of the library. Every word of the query has to be the
+     * beginning of a word of the title, case and diacritics are ignored. The best matches come first: exact title,
+     * title starting with the query, titles containing all query words, then titles containing words starting with
+     * the query words
+     *
+     * @param query
+     * @param limit maximum number of returned books
+     * @return ranked books
+     */
+    public List<Book> searchBooksByTitle(final String query, final int limit) {
+        Objects.requireNonNull(query);
+        return titleIndex.search(query, limit).stream().map(books::get).filter(Objects::nonNull).toList();
     }
 
     /**
@@ -244,13 +1792,28 @@ public class Library {
      * @param customer id
      */
     public void deleteCustomer(final Long ID) {
+        metrics.measure(Operation.DELETE_CUSTOMER, () -> checkAndDeleteCustomer(ID));
+    }
+
+    /**
+     * deletes the customer, see deleteCustomer
+     */
+    private void checkAndDeleteCustomer(final Long ID) {
         Objects.requireNonNull(ID);
-        Customer customer = getCustomer(ID).orElseThrow(() -> new RuntimeException("Customer with id not found"));
-        if (!customer.hasOverdraftFees())
-            throw new RuntimeException("Fee not paid");
-        if (!customer.getBookCopiesId().isEmpty())
-            throw new RuntimeException("Customer has books");
-        customers.remove(customer);
+        long stamp = catalogLock.writeLock();
+        try {
+            Customer customer = getCustomer(ID).orElseThrow(() -> new RuntimeException("Customer with id not found"));
+            if (!customer.hasOverdraftFees())
+                throw new RuntimeException("Fee not paid");
+            if (customer.getBookCopyCount() > 0)
+                throw new RuntimeException("Customer has books");
+            Journal current = journal;
+            if (current != null)
+                current.sync(current.appendDeleteCustomer(ID));
+            removeCustomer(customer);
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -259,13 +1822,28 @@ public class Library {
      * @param book copy id
      */
     public void deleteBookCopy(final Long ID) {
+        metrics.measure(Operation.DELETE_BOOK_COPY, () -> checkAndDeleteBookCopy(ID));
+    }
+
+    /**
+     * deletes the book copy, see deleteBookCopy
+     */
+    private void checkAndDeleteBookCopy(final Long ID) {
         Objects.requireNonNull(ID);
-        Optional<BookCopy> bookCopy = getBookCopy(ID);
-        if (bookCopy.isEmpty())
-            throw new RuntimeException("ID not found");
-        if (bookCopy.get().isLent())
-            throw new RuntimeException("Book is lent");
-        bookCopies.remove(bookCopy.get());
+        long stamp = catalogLock.writeLock();
+        try {
+            Optional<BookCopy> bookCopy = getBookCopy(ID);
+            if (bookCopy.isEmpty())
+                throw new RuntimeException("ID not found");
+            if (bookCopy.get().isLent())
+                throw new RuntimeException("Book is lent");
+            Journal current = journal;
+            if (current != null)
+                current.sync(current.appendDeleteBookCopy(ID));
+            removeBookCopy(bookCopy.get());
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -274,22 +1852,35 @@ public class Library {
      * @param isbn
      */
     public void deleteBook(final String isbn) {
+        metrics.measure(Operation.DELETE_BOOK, () -> checkAndDeleteBook(isbn));
+    }
+
+    /**
+     * deletes the book and its copies, see deleteBook
+     */
+    private void checkAndDeleteBook(final String isbn) {
         Objects.requireNonNull(isbn);
-        // Check if book is in library
-        Book foundBook = books.stream().filter(book -> book.getIsbn().equals(isbn)).findAny()
-                .orElseThrow(() -> new RuntimeException("Book not found"));
-
-        // Collect hardcopies
-        Set<BookCopy> copies = bookCopies.stream().filter(book -> book.getIsbn().equals(isbn))
-                .collect(Collectors.toSet());
-        if (copies.isEmpty())
-            throw new RuntimeException("No BookCopy found with given isbn");
-
-        if (copies.stream().anyMatch(BookCopy::isLent))
-            throw new RuntimeException("At least one book is lent");
-        // Deletes books
-        bookCopies.removeAll(copies);
-        books.remove(foundBook);
+        long stamp = catalogLock.writeLock();
+        try {
+            // Check if book is in library
+            Book foundBook = getBook(isbn).orElseThrow(() -> new RuntimeException("Book not found"));
+
+            // Collect hardcopies
+            Set<BookCopy> copies = getBookCopiesByIsbn(isbn);
+            if (copies.isEmpty())
+                throw new RuntimeException("No BookCopy found with given isbn");
+
+            if (copies.stream().anyMatch(BookCopy::isLent))
+                throw new RuntimeException("At least one book is lent");
+            Journal current = journal;
+            if (current != null)
+                current.sync(current.appendDeleteBook(isbn));
+            // Deletes books
+            copies.forEach(this::removeBookCopy);
+            removeBook(foundBook);
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
     }
 
 }
@@ -0,0 +1,46 @@
+package main.library;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * read-only set view over the values of one of the primary-key indexes of the library.
+ * Every value is stored under its own key, so the values are distinct and can be handed out as a set
+ * without copying them
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class MapValuesView<K, V> extends AbstractSet<V> {
+    private final Map<K, V> map;
+    private final Class<V> type;
+    private final Function<V, K> key;
+
+    MapValuesView(Map<K, V> map, Class<V> type, Function<V, K> key) {
+        this.map = Objects.requireNonNull(map);
+        this.type = Objects.requireNonNull(type);
+        this.key = Objects.requireNonNull(key);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return Collections.unmodifiableCollection(map.values()).iterator();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!type.isInstance(o))
+            return false;
+        V value = type.cast(o);
+        return map.get(key.apply(value)) == value;
+    }
+}
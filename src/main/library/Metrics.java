@@ -0,0 +1,246 @@
+package main.library;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * counts the calls, errors and latencies of the operations of a library and the rows its imports add. Disabled by
+ * default, then start() only reads a volatile field and finish() and fail() return at once. Enabled, an operation costs
+ * two System.nanoTime() calls and a few atomic increments, nothing is allocated except for counting a new error
+ * category.
+ * <p>
+ * Errors are counted by operation and category. The category is the message of a RuntimeException up to the first
+ * digit or quote, so messages naming rows or values fall into one category, and the class name for other exceptions
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public final class Metrics implements MetricsMXBean {
+    /**
+     * returned by start() while disabled, the operation is then not counted
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+    // More error categories than this are counted as "other"
+    private static final int MAX_ERROR_CATEGORIES = 1_000;
+
+    private volatile boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] errors;
+    private final LongAdder[] rows;
+    private final LongAdder[] importNanos;
+    private final Map<String, LongAdder> errorCategories;
+
+    Metrics() {
+        int operations = Operation.values().length;
+        this.latencies = new LatencyHistogram[operations];
+        this.errors = new LongAdder[operations];
+        this.rows = new LongAdder[operations];
+        this.importNanos = new LongAdder[operations];
+        for (int i = 0; i < operations; i++) {
+            latencies[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+            rows[i] = new LongAdder();
+            importNanos[i] = new LongAdder();
+        }
+        this.errorCategories = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * marks the start of an operation
+     *
+     * @return start time to pass to finish or fail, DISABLED if metrics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * counts an operation that returned normally
+     *
+     * @param operation
+     * @param start     returned by start()
+     */
+    public void finish(Operation operation, long start) {
+        if (start != DISABLED)
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * counts an import that added the given number of rows
+     *
+     * @param operation
+     * @param start     returned by start()
+     * @param importedRows
+     */
+    public void finish(Operation operation, long start, long importedRows) {
+        if (start == DISABLED)
+            return;
+        long nanos = System.nanoTime() - start;
+        latencies[operation.ordinal()].record(nanos);
+        rows[operation.ordinal()].add(importedRows);
+        importNanos[operation.ordinal()].add(nanos);
+    }
+
+    /**
+     * counts an operation that threw the given exception
+     *
+     * @param operation
+     * @param start     returned by start()
+     * @param error
+     */
+    public void fail(Operation operation, long start, Exception error) {
+        if (start == DISABLED)
+            return;
+        latencies[operation.ordinal()].record(System.nanoTime() - start);
+        errors[operation.ordinal()].increment();
+        String key = operation.getMethodName() + ": " + category(error);
+        LongAdder counter = errorCategories.get(key);
+        if (counter == null)
+            counter = errorCategories.size() < MAX_ERROR_CATEGORIES
+                    ? errorCategories.computeIfAbsent(key, k -> new LongAdder())
+                    : errorCategories.computeIfAbsent(operation.getMethodName() + ": other", k -> new LongAdder());
+        counter.increment();
+    }
+
+    /**
+     * runs an operation and counts it, for operations that allocate anyway
+     *
+     * @param operation
+     * @param call
+     * @return result of the call
+     */
+    public <T> T measure(Operation operation, Supplier<T> call) {
+        long start = start();
+        try {
+            T result = call.get();
+            finish(operation, start);
+            return result;
+        } catch (RuntimeException e) {
+            fail(operation, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * runs an operation without result and counts it, for operations that allocate anyway
+     *
+     * @param operation
+     * @param call
+     */
+    public void measure(Operation operation, Runnable call) {
+        long start = start();
+        try {
+            call.run();
+            finish(operation, start);
+        } catch (RuntimeException e) {
+            fail(operation, start, e);
+            throw e;
+        }
+    }
+
+    static String category(Exception error) {
+        String message = error.getMessage();
+        if (error.getClass() != RuntimeException.class || message == null)
+            return error.getClass().getSimpleName();
+        int end = 0;
+        while (end < message.length() && !Character.isDigit(message.charAt(end)) && message.charAt(end) != '\'')
+            end++;
+        String category = message.substring(0, end).strip();
+        return category.isEmpty() ? error.getClass().getSimpleName() : category;
+    }
+
+    /**
+     * returns the statistics of every operation that was called at least once, in the order of {@link Operation}
+     *
+     * @return statistics per operation
+     */
+    @Override
+    public List<OperationStatistics> getOperations() {
+        List<OperationStatistics> operations = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            int i = operation.ordinal();
+            if (latencies[i].getCount() > 0)
+                operations.add(OperationStatistics.of(operation, latencies[i], errors[i].sum(), rows[i].sum(),
+                        importNanos[i].sum()));
+        }
+        return operations;
+    }
+
+    /**
+     * returns the number of errors by operation and category, sorted by key
+     *
+     * @return "operation: category" -> errors
+     */
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorCategories.forEach((key, counter) -> counts.put(key, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * returns the statistics and the errors as text, one line per operation and per error category
+     *
+     * @return text dump
+     */
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append("Metrics ").append(enabled ? "enabled" : "disabled").append(System.lineSeparator());
+        for (OperationStatistics operation : getOperations())
+            text.append(operation).append(System.lineSeparator());
+        getErrors().forEach(
+                (key, count) -> text.append(key).append(": ").append(count).append(System.lineSeparator()));
+        return text.toString();
+    }
+
+    /**
+     * sets all counters back to zero
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            errors[i].reset();
+            rows[i].reset();
+            importNanos[i].reset();
+        }
+        errorCategories.clear();
+    }
+
+    /**
+     * registers the metrics in the platform MBean server as main.library:type=Metrics,name=given name
+     *
+     * @param name
+     * @return name of the registered MBean
+     * @throws RuntimeException if the name is invalid or already registered
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = ObjectName.getInstance("main.library:type=Metrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Metrics could not be registered", e);
+        }
+    }
+}
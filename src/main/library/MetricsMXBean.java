@@ -0,0 +1,25 @@
+package main.library;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the view of {@link Metrics} in JMX, registered by {@link Metrics#register(String)}
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    List<OperationStatistics> getOperations();
+
+    Map<String, Long> getErrors();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,43 @@
+package main.library;
+
+/**
+ * the operations of the library and of Logic whose latency and errors are counted by {@link Metrics}
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public enum Operation {
+    LEND_BOOK("lendBook"),
+    RETURN_BOOK("returnBook"),
+    LEND_BOOKS("lendBooks"),
+    RETURN_BOOKS("returnBooks"),
+    DELETE_CUSTOMER("deleteCustomer"),
+    DELETE_BOOK_COPY("deleteBookCopy"),
+    DELETE_BOOK("deleteBook"),
+    SEARCH_VIA_ISBN("searchViaISBN"),
+    FIND_MATCHING_COPIES("findMatchingCopies"),
+    SEARCH_VIA_TITLE("searchViaTitle"),
+    SEARCH_BOOKS_VIA_TITLE("searchBooksViaTitle"),
+    SEARCH_VIA_AUTHOR("searchViaAuthor"),
+    SEARCH_CUSTOMER_VIA_ID("searchCustomerViaId"),
+    GET_BOOK_VIA_ISBN("getBookViaISBN"),
+    CSV_BOOK("csvBook"),
+    CSV_BOOK_COPY("csvBookCopy"),
+    CSV_CUSTOMER("csvCustomer"),
+    CSV_IMPORT("csvImport");
+
+    private final String methodName;
+
+    Operation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * returns the name of the method the operation stands for
+     *
+     * @return method name
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
@@ -0,0 +1,131 @@
+package main.library;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ConstructorParameters;
+
+/**
+ * holds the counted calls, errors and latencies of one operation at the time {@link Metrics#getOperations()} was
+ * called. Latencies are in microseconds, imported rows and their throughput are 0 for operations that are no import
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class OperationStatistics {
+    private final String operation;
+    private final long calls;
+    private final long errors;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+    private final long rows;
+    private final double rowsPerSecond;
+
+    @ConstructorParameters({ "operation", "calls", "errors", "meanMicros", "p50Micros", "p90Micros", "p99Micros",
+            "p999Micros", "maxMicros", "rows", "rowsPerSecond" })
+    public OperationStatistics(String operation, long calls, long errors, double meanMicros, double p50Micros,
+            double p90Micros, double p99Micros, double p999Micros, double maxMicros, long rows, double rowsPerSecond) {
+        this.operation = operation;
+        this.calls = calls;
+        this.errors = errors;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+        this.rows = rows;
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    static OperationStatistics of(Operation operation, LatencyHistogram latencies, long errors, long rows,
+            long importNanos) {
+        long calls = latencies.getCount();
+        double nanosPerMicro = TimeUnit.MICROSECONDS.toNanos(1);
+        return new OperationStatistics(operation.getMethodName(), calls, errors,
+                calls == 0 ? 0 : latencies.getSum() / nanosPerMicro / calls,
+                latencies.getValueAt(0.5) / nanosPerMicro, latencies.getValueAt(0.9) / nanosPerMicro,
+                latencies.getValueAt(0.99) / nanosPerMicro, latencies.getValueAt(0.999) / nanosPerMicro,
+                latencies.getMax() / nanosPerMicro, rows,
+                importNanos == 0 ? 0 : rows * (double) TimeUnit.SECONDS.toNanos(1) / importNanos);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * returns the number of calls, including the failed ones
+     *
+     * @return calls
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * returns the number of calls that threw an exception
+     *
+     * @return errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    public double getP90Micros() {
+        return p90Micros;
+    }
+
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * returns the number of rows added by successful imports
+     *
+     * @return imported rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * returns the rows added by successful imports divided by the time these imports took
+     *
+     * @return rows per second
+     */
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        String line = String.format(Locale.ROOT,
+                "%-20s calls %8d  errors %6d  mean %10.1f  p50 %10.1f  p90 %10.1f  p99 %10.1f  p99.9 %10.1f"
+                        + "  max %10.1f us",
+                operation, calls, errors, meanMicros, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+        if (rows == 0)
+            return line;
+        return line + String.format(Locale.ROOT, "  %d rows (%.0f rows/s)", rows, rowsPerSecond);
+    }
+}
@@ -0,0 +1,62 @@
+package main.library;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * one page of a listing that is read piece by piece. The token of the page continues the listing after its last item
+ * and is handed to the next call, it is null on the last page. Tokens stay valid while the library changes, a page
+ * continues after the item the token was taken from
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ * @param <T> type of the items
+ */
+public final class Page<T> {
+    private final List<T> items;
+    private final String nextPageToken;
+
+    public Page(List<T> items, String nextPageToken) {
+        this.items = List.copyOf(Objects.requireNonNull(items));
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * returns the items of the page in the order of the listing
+     *
+     * @return items
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * returns the token continuing the listing after this page
+     *
+     * @return token, null on the last page
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * returns true if the listing continues after this page
+     *
+     * @return true/false
+     */
+    public boolean hasNextPage() {
+        return nextPageToken != null;
+    }
+
+    /**
+     * checks the size of a page asked for
+     *
+     * @param pageSize
+     * @return page size
+     */
+    public static int checkPageSize(int pageSize) {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive");
+        return pageSize;
+    }
+}
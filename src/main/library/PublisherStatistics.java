@@ -0,0 +1,57 @@
+package main.library;
+
+import java.util.Locale;
+
+/**
+ * holds the number of book copies of one publisher and their share of all book copies in the library
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class PublisherStatistics {
+    private final String publisher;
+    private final long bookCopies;
+    private final long totalBookCopies;
+
+    public PublisherStatistics(String publisher, long bookCopies, long totalBookCopies) {
+        if (bookCopies < 0 || totalBookCopies < bookCopies)
+            throw new IllegalArgumentException("Book copies must not be negative or more than the total");
+        this.publisher = publisher;
+        this.bookCopies = bookCopies;
+        this.totalBookCopies = totalBookCopies;
+    }
+
+    /**
+     * returns the name of the publisher
+     *
+     * @return publisher
+     */
+    public String getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * returns the number of book copies of the publisher
+     *
+     * @return book copies
+     */
+    public long getBookCopies() {
+        return bookCopies;
+    }
+
+    /**
+     * returns the share of the publisher in all book copies
+     *
+     * @return percentage between 0 and 100
+     */
+    public double getPercentage() {
+        if (totalBookCopies == 0)
+            return 0;
+        return bookCopies * 100.0 / totalBookCopies;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s:  %d BookCopies (%.2f%%)", publisher, bookCopies, getPercentage());
+    }
+}
@@ -0,0 +1,229 @@
+package main.library;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * keeps the results of the latest searches of a library, so a repeated search costs one hash lookup. Every result is
+ * stored with the catalog epoch of the library, which imports and deletes advance, a result of an older epoch is not
+ * used again. Lending and returning don't change which copies a search finds, so they keep the results valid.
+ * <p>
+ * The results are split into segments by the hash of the search, each segment drops its least recently used result
+ * when it is full, so searches in different segments don't wait for each other. Results have to be immutable
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public final class SearchCache {
+    /**
+     * number of results kept by the cache of a new library
+     */
+    public static final int DEFAULT_CAPACITY = 10_000;
+    private static final int SEGMENTS = 16;
+
+    private final Library library;
+    private final Segment[] segments;
+    private volatile boolean enabled;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * a search and its query, the key of a result
+     */
+    private static final class Key {
+        private final Operation operation;
+        private final String query;
+        private final int hash;
+
+        private Key(Operation operation, String query) {
+            this.operation = operation;
+            this.query = query;
+            this.hash = 31 * operation.ordinal() + query.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && operation == key.operation && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * a result and the catalog epoch it was found in
+     */
+    private static final class Result {
+        private final long epoch;
+        private final Object value;
+
+        private Result(long epoch, Object value) {
+            this.epoch = epoch;
+            this.value = value;
+        }
+    }
+
+    /**
+     * the results of some of the searches in order of their last use
+     */
+    private final class Segment {
+        private final Map<Key, Result> results;
+
+        private Segment(int capacity) {
+            this.results = new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                    if (size() <= capacity)
+                        return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        private Result get(Key key) {
+            return results.get(key);
+        }
+
+        private void put(Key key, Result result) {
+            results.put(key, result);
+        }
+
+        private int size() {
+            return results.size();
+        }
+
+        private void clear() {
+            results.clear();
+        }
+    }
+
+    SearchCache(Library library, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.library = library;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment((capacity + SEGMENTS - 1) / SEGMENTS);
+        this.enabled = true;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * returns the result of the search for the query. A result of the current catalog epoch is returned from the
+     * cache, otherwise the search runs and its result is kept. Exceptions of the search are not kept
+     *
+     * @param operation search that is run
+     * @param query     value searched for
+     * @param search    runs the search
+     * @return result of the search
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Operation operation, String query, Supplier<T> search) {
+        if (!enabled)
+            return search.get();
+        Key key = new Key(operation, query);
+        Segment segment = segments[(key.hash ^ key.hash >>> 16) & SEGMENTS - 1];
+        // Read before searching, a search running during a change is kept with the epoch before the change
+        long epoch = library.getCatalogEpoch();
+        synchronized (segment) {
+            Result result = segment.get(key);
+            if (result != null && result.epoch == epoch) {
+                hits.increment();
+                return (T) result.value;
+            }
+        }
+        misses.increment();
+        T value = search.get();
+        synchronized (segment) {
+            segment.put(key, new Result(epoch, value));
+        }
+        return value;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * switches the cache on or off, switched off every search runs and the kept results are dropped
+     *
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * returns the number of results dropped because their segment was full
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * returns the share of searches answered from the cache
+     *
+     * @return hit ratio between 0 and 1, 0 before the first search
+     */
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * returns the number of kept results, including results of older epochs not dropped yet
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        return size;
+    }
+
+    /**
+     * drops the kept results and resets the statistics
+     */
+    public void clear() {
+        for (Segment segment : segments)
+            synchronized (segment) {
+                segment.clear();
+            }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Search cache: %d results, %d hits, %d misses (%.1f%% hits), %d evictions",
+                size(), getHits(), getMisses(), 100 * getHitRatio(), getEvictions());
+    }
+}
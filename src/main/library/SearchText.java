@@ -0,0 +1,48 @@
+package main.library;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * normalizes names and titles for the search indexes of the library, so that lookups ignore case, diacritics and
+ * surrounding or repeated whitespace
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+final class SearchText {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SearchText() {
+    }
+
+    /**
+     * returns the normalized form of the given text, e.g. "  Jürgen   MÜLLER " becomes "jurgen muller"
+     *
+     * @param text
+     * @return normalized text
+     */
+    static String normalize(String text) {
+        Objects.requireNonNull(text);
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = DIACRITICS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * splits the normalized form of the given text into its words, punctuation is dropped,
+     * e.g. "The Joy of Programming, 2nd Ed." becomes [the, joy, of, programming, 2nd, ed]
+     *
+     * @param text
+     * @return words of the text
+     */
+    static List<String> tokens(String text) {
+        return Arrays.stream(TOKEN_SEPARATOR.split(normalize(text))).filter(token -> !token.isEmpty()).toList();
+    }
+}
@@ -0,0 +1,306 @@
+package main.library;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * keeps the book copies sorted by shelf location in natural order, numbers in a location are compared by their value,
+ * so A9 comes before A10. Copies on the same shelf are sorted by id. A range of shelves or a shelf prefix is a range of
+ * the sorted copies and is read page by page. Changes have to be serialized by the caller, reading may run
+ * concurrently with them. Imports sort their copies outside of the index and add them at once, see addAll
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class ShelfIndex {
+    // A few new copies are added one by one, more are merged into a new map that replaces this one
+    private static final int MERGE_RATIO = 16;
+
+    private volatile NavigableMap<Key, BookCopy> bookCopies = new ConcurrentSkipListMap<>();
+
+    /**
+     * position of a copy in the index, also the content of a page token
+     */
+    private static final class Key implements Comparable<Key> {
+        private final String location;
+        private final long id;
+
+        private Key(String location, long id) {
+            this.location = location;
+            this.id = id;
+        }
+
+        private static Key parse(String pageToken) {
+            int separator = pageToken.indexOf(':');
+            try {
+                return new Key(pageToken.substring(separator + 1), Long.parseLong(pageToken.substring(0, separator)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int order = compareLocations(location, other.location);
+            return order != 0 ? order : Long.compare(id, other.id);
+        }
+
+        @Override
+        public String toString() {
+            return id + ":" + location;
+        }
+    }
+
+    /**
+     * copies sorted in shelf order outside of the index, see sort
+     */
+    static final class Run {
+        private final List<Map.Entry<Key, BookCopy>> entries;
+
+        private Run(List<Map.Entry<Key, BookCopy>> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * the entries of sorted runs as a sorted map, from which a skip list is built in one pass without comparing keys
+     */
+    private static final class SortedEntries extends AbstractMap<Key, BookCopy> implements SortedMap<Key, BookCopy> {
+        private final List<Map.Entry<Key, BookCopy>> entries;
+
+        private SortedEntries(List<Map.Entry<Key, BookCopy>> entries) {
+            this.entries = entries;
+        }
+
+        private int index(Key key) {
+            int index = Collections.binarySearch(entries, new AbstractMap.SimpleEntry<>(key, null),
+                    Map.Entry.comparingByKey());
+            return index >= 0 ? index : -index - 1;
+        }
+
+        @Override
+        public Set<Map.Entry<Key, BookCopy>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<Key, BookCopy>> iterator() {
+                    return Collections.unmodifiableList(entries).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super Key> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedMap<Key, BookCopy> subMap(Key fromKey, Key toKey) {
+            return new SortedEntries(entries.subList(index(fromKey), Math.max(index(fromKey), index(toKey))));
+        }
+
+        @Override
+        public SortedMap<Key, BookCopy> headMap(Key toKey) {
+            return new SortedEntries(entries.subList(0, index(toKey)));
+        }
+
+        @Override
+        public SortedMap<Key, BookCopy> tailMap(Key fromKey) {
+            return new SortedEntries(entries.subList(index(fromKey), entries.size()));
+        }
+
+        @Override
+        public Key firstKey() {
+            return entries.get(0).getKey();
+        }
+
+        @Override
+        public Key lastKey() {
+            return entries.get(entries.size() - 1).getKey();
+        }
+    }
+
+    /**
+     * sorts copies in shelf order without touching an index, so the copies of an import can be sorted in parallel
+     *
+     * @param bookCopies
+     * @return sorted copies
+     */
+    static Run sort(Collection<BookCopy> bookCopies) {
+        List<Map.Entry<Key, BookCopy>> entries = new ArrayList<>(bookCopies.size());
+        for (BookCopy bookCopy : bookCopies)
+            entries.add(Map.entry(new Key(bookCopy.getShelfLocation(), bookCopy.getIdValue()), bookCopy));
+        entries.sort(Map.Entry.comparingByKey());
+        return new Run(entries);
+    }
+
+    /**
+     * adds sorted copies that are not in the index yet. Unless they are only a few compared with the index, they are
+     * merged with the copies of the index into a new skip list, which is built in one pass instead of searching the
+     * place of every copy, and replaces the old one at once
+     *
+     * @param runs copies sorted by {@link #sort(Collection)}
+     */
+    void addAll(List<Run> runs) {
+        NavigableMap<Key, BookCopy> current = bookCopies;
+        int count = 0;
+        for (Run run : runs)
+            count += run.entries.size();
+        if (count < current.size() / MERGE_RATIO) {
+            for (Run run : runs)
+                for (Map.Entry<Key, BookCopy> entry : run.entries)
+                    current.put(entry.getKey(), entry.getValue());
+            return;
+        }
+        List<Map.Entry<Key, BookCopy>> entries = new ArrayList<>(current.size() + count);
+        entries.addAll(current.entrySet());
+        for (Run run : runs)
+            entries.addAll(run.entries);
+        // The list consists of sorted runs, which the sort only merges
+        entries.sort(Map.Entry.comparingByKey());
+        bookCopies = new ConcurrentSkipListMap<>(new SortedEntries(entries));
+    }
+
+    void add(BookCopy bookCopy) {
+        bookCopies.put(new Key(bookCopy.getShelfLocation(), bookCopy.getIdValue()), bookCopy);
+    }
+
+    void remove(BookCopy bookCopy) {
+        bookCopies.remove(new Key(bookCopy.getShelfLocation(), bookCopy.getIdValue()));
+    }
+
+    /**
+     * returns a page of the copies on the shelves from the first location up to the last location and the shelves
+     * below it, A49 includes A49.1 and A49b
+     *
+     * @param from      first location
+     * @param to        last location
+     * @param pageSize
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of copies in shelf order
+     */
+    Page<BookCopy> range(String from, String to, int pageSize, String pageToken) {
+        return page(from, location -> compareLocations(location, to) <= 0 || hasPrefix(location, to), pageSize,
+                pageToken);
+    }
+
+    /**
+     * returns a page of the copies whose shelf location starts with the prefix. A prefix ending in a digit stands for
+     * the whole number, A4 finds A4 and A4.1 but not A41
+     *
+     * @param prefix
+     * @param pageSize
+     * @param pageToken token of the previous page, null for the first page
+     * @return page of copies in shelf order
+     */
+    Page<BookCopy> prefix(String prefix, int pageSize, String pageToken) {
+        return page(prefix, location -> hasPrefix(location, prefix), pageSize, pageToken);
+    }
+
+    private Page<BookCopy> page(String from, Predicate<String> inRange, int pageSize, String pageToken) {
+        Page.checkPageSize(pageSize);
+        Key first = new Key(from, Long.MIN_VALUE);
+        Key after = pageToken == null ? null : Key.parse(pageToken);
+        NavigableMap<Key, BookCopy> sorted = bookCopies;
+        NavigableMap<Key, BookCopy> tail = after == null || after.compareTo(first) < 0 ? sorted.tailMap(first, true)
+                : sorted.tailMap(after, false);
+        List<BookCopy> items = new ArrayList<>(Math.min(pageSize, 1024));
+        Key last = null;
+        for (Map.Entry<Key, BookCopy> entry : tail.entrySet()) {
+            if (!inRange.test(entry.getKey().location))
+                break;
+            if (items.size() == pageSize)
+                return new Page<>(items, last.toString());
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * returns true if the location starts with the prefix and does not continue a number the prefix ends with. The
+     * locations with a prefix are next to each other in natural order
+     *
+     * @param location
+     * @param prefix
+     * @return true/false
+     */
+    static boolean hasPrefix(String location, String prefix) {
+        if (!location.startsWith(prefix))
+            return false;
+        int end = prefix.length();
+        return end == 0 || end == location.length() || !isDigit(prefix.charAt(end - 1))
+                || !isDigit(location.charAt(end));
+    }
+
+    /**
+     * compares two shelf locations in natural order. Numbers are compared by their value, the same value with more
+     * leading zeros comes later, a number comes before any other character
+     *
+     * @param a
+     * @param b
+     * @return negative, zero or positive like a comparator
+     */
+    static int compareLocations(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            boolean digitA = isDigit(a.charAt(i));
+            boolean digitB = isDigit(b.charAt(j));
+            if (digitA && digitB) {
+                int startA = i;
+                int startB = j;
+                while (i < a.length() && isDigit(a.charAt(i)))
+                    i++;
+                while (j < b.length() && isDigit(b.charAt(j)))
+                    j++;
+                int order = compareNumbers(a, startA, i, b, startB, j);
+                if (order != 0)
+                    return order;
+            } else if (digitA != digitB) {
+                return digitA ? -1 : 1;
+            } else {
+                if (a.charAt(i) != b.charAt(j))
+                    return Character.compare(a.charAt(i), b.charAt(j));
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    private static int compareNumbers(String a, int startA, int endA, String b, int startB, int endB) {
+        int valueA = startA;
+        int valueB = startB;
+        while (valueA < endA - 1 && a.charAt(valueA) == '0')
+            valueA++;
+        while (valueB < endB - 1 && b.charAt(valueB) == '0')
+            valueB++;
+        if (endA - valueA != endB - valueB)
+            return Integer.compare(endA - valueA, endB - valueB);
+        for (; valueA < endA; valueA++, valueB++)
+            if (a.charAt(valueA) != b.charAt(valueB))
+                return Character.compare(a.charAt(valueA), b.charAt(valueB));
+        return Integer.compare(endA - startA, endB - startB);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
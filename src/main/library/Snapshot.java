@@ -0,0 +1,526 @@
+package main.library;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * binary snapshot of all books, book copies and customers of a library. The file starts with a magic number and a
+ * format version and the sequence number of the last journal record it contains, followed by a table of all distinct
+ * strings and then by the columns of the three entities, every column a block of primitive values. Strings are stored
+ * as indexes into the string table, dates as epoch days. The file ends with a CRC32 checksum of everything before it.
+ * Snapshots are written by the library itself, so loading one does not check the entities against each other again
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class Snapshot {
+    private static final int MAGIC = 0x4D4C4942; // "MLIB"
+    static final int VERSION = 2;
+    // Version 1 was written before the journal and contains no sequence number
+    private static final int VERSION_WITHOUT_JOURNAL = 1;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final byte HAS_OVERDRAFT_FEES = 1;
+    private static final byte HAS_PAID_MONTHLY_CONTRIBUTION = 2;
+
+    private final List<Book> books;
+    private final List<BookCopy> bookCopies;
+    private final List<Customer> customers;
+    // State of the copies and customers at the time of the snapshot, they may change afterwards
+    private final boolean[] lent;
+    private final LocalDate[] lentDates;
+    private final byte[] loanCounts;
+    private final long[] loans;
+    private final long journalSequence;
+
+    private Snapshot(List<Book> books, List<BookCopy> bookCopies, List<Customer> customers, boolean[] lent,
+            LocalDate[] lentDates, byte[] loanCounts, long[] loans, long journalSequence) {
+        this.books = books;
+        this.bookCopies = bookCopies;
+        this.customers = customers;
+        this.lent = lent;
+        this.lentDates = lentDates;
+        this.loanCounts = loanCounts;
+        this.loans = loans;
+        this.journalSequence = journalSequence;
+    }
+
+    /**
+     * takes a snapshot of the given entities. The caller has to make sure that they do not change meanwhile, the
+     * snapshot can be written afterwards while they change again
+     *
+     * @param books
+     * @param bookCopies
+     * @param customers
+     * @param journalSequence sequence number of the last journal record contained in the entities
+     * @return snapshot
+     */
+    static Snapshot capture(Collection<Book> books, Collection<BookCopy> bookCopies, Collection<Customer> customers,
+            long journalSequence) {
+        List<BookCopy> copyList = new ArrayList<>(bookCopies);
+        boolean[] lent = new boolean[copyList.size()];
+        LocalDate[] lentDates = new LocalDate[copyList.size()];
+        for (int i = 0; i < lent.length; i++) {
+            lent[i] = copyList.get(i).isLent();
+            lentDates[i] = copyList.get(i).getLentDate();
+        }
+        List<Customer> customerList = new ArrayList<>(customers);
+        byte[] loanCounts = new byte[customerList.size()];
+        long[] loans = new long[customerList.size() * Customer.MAX_BOOK_COPIES];
+        int loanTotal = 0;
+        for (int i = 0; i < loanCounts.length; i++) {
+            int count = customerList.get(i).copyBookCopyIds(loans, loanTotal);
+            loanCounts[i] = (byte) count;
+            loanTotal += count;
+        }
+        return new Snapshot(new ArrayList<>(books), copyList, customerList, lent, lentDates, loanCounts, loans,
+                journalSequence);
+    }
+
+    List<Book> getBooks() {
+        return books;
+    }
+
+    List<BookCopy> getBookCopies() {
+        return bookCopies;
+    }
+
+    List<Customer> getCustomers() {
+        return customers;
+    }
+
+    long getJournalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * writes the snapshot to a new file that replaces the given one once it is completely on disk
+     *
+     * @param path
+     * @throws IOException
+     */
+    void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writeTo(temporary);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void writeTo(Path path) throws IOException {
+        // Strings are numbered before anything is written, the table comes first in the file
+        StringTable strings = new StringTable();
+        int[] isbns = strings.refs(books, Book::getIsbn);
+        int[] titles = strings.refs(books, Book::getTitle);
+        int[] cities = strings.refs(books, Book::getCity);
+        int[] publishers = strings.refs(books, Book::getPublisher);
+        int[] authorCounts = new int[books.size()];
+        List<String> authorList = new ArrayList<>();
+        for (int i = 0; i < authorCounts.length; i++) {
+            authorCounts[i] = books.get(i).getAuthors().size();
+            authorList.addAll(books.get(i).getAuthors());
+        }
+        int[] authors = strings.refs(authorList, author -> author);
+        int[] copyIsbns = strings.refs(bookCopies, BookCopy::getIsbn);
+        int[] shelfLocations = strings.refs(bookCopies, BookCopy::getShelfLocation);
+        int[] names = strings.refs(customers, Customer::getName);
+        int[] firstNames = strings.refs(customers, Customer::getFirstName);
+        int[] addresses = strings.refs(customers, Customer::getAddress);
+        int[] customerCities = strings.refs(customers, Customer::getCity);
+        int[] zipCodes = strings.refs(customers, Customer::getZipCode);
+
+        try (Output out = new Output(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSequence);
+            out.writeInt(strings.values.size());
+            for (String value : strings.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.writeBytes(bytes, bytes.length);
+            }
+
+            out.writeInt(books.size());
+            out.writeInts(isbns, isbns.length);
+            out.writeInts(titles, titles.length);
+            out.writeInts(cities, cities.length);
+            out.writeInts(publishers, publishers.length);
+            out.writeInts(column(books, Book::getYearValue), books.size());
+            out.writeInts(column(books, Book::getEditionValue), books.size());
+            out.writeInts(authorCounts, authorCounts.length);
+            out.writeInt(authors.length);
+            out.writeInts(authors, authors.length);
+
+            out.writeInt(bookCopies.size());
+            out.writeLongs(longColumn(bookCopies, BookCopy::getIdValue), bookCopies.size());
+            out.writeInts(copyIsbns, copyIsbns.length);
+            out.writeInts(shelfLocations, shelfLocations.length);
+            out.writeLongs(longColumn(bookCopies, copy -> copy.getAddedToLibrary().toEpochDay()), bookCopies.size());
+            byte[] lentFlags = new byte[lent.length];
+            long[] lentDays = new long[lent.length];
+            for (int i = 0; i < lent.length; i++) {
+                lentFlags[i] = (byte) (lent[i] ? 1 : 0);
+                lentDays[i] = lentDates[i].toEpochDay();
+            }
+            out.writeBytes(lentFlags, lentFlags.length);
+            out.writeLongs(lentDays, lentDays.length);
+
+            out.writeInt(customers.size());
+            out.writeLongs(longColumn(customers, Customer::getIdValue), customers.size());
+            out.writeInts(names, names.length);
+            out.writeInts(firstNames, firstNames.length);
+            out.writeInts(addresses, addresses.length);
+            out.writeInts(customerCities, customerCities.length);
+            out.writeInts(zipCodes, zipCodes.length);
+            byte[] flags = new byte[customers.size()];
+            int loanTotal = 0;
+            for (int i = 0; i < flags.length; i++) {
+                Customer customer = customers.get(i);
+                flags[i] = (byte) ((customer.hasOverdraftFees() ? HAS_OVERDRAFT_FEES : 0)
+                        | (customer.hasPaidMonthlyContribution() ? HAS_PAID_MONTHLY_CONTRIBUTION : 0));
+                loanTotal += loanCounts[i];
+            }
+            out.writeBytes(flags, flags.length);
+            out.writeBytes(loanCounts, loanCounts.length);
+            out.writeInt(loanTotal);
+            out.writeLongs(loans, loanTotal);
+            out.finish();
+        }
+    }
+
+    /**
+     * reads a snapshot written by {@link #write(Path)}
+     *
+     * @param path
+     * @return snapshot
+     * @throws IOException
+     */
+    static Snapshot read(Path path) throws IOException {
+        try (Input in = new Input(FileChannel.open(path, StandardOpenOption.READ))) {
+            if (in.readInt() != MAGIC)
+                throw new RuntimeException("File is not a library snapshot");
+            int version = in.readInt();
+            if (version != VERSION && version != VERSION_WITHOUT_JOURNAL)
+                throw new RuntimeException("Unsupported snapshot version " + version);
+            long journalSequence = version == VERSION ? in.readLong() : 0;
+            String[] strings = new String[in.readCount()];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.readCount();
+                if (bytes.length < length)
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                in.readBytes(bytes, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            int bookCount = in.readCount();
+            int[] isbns = in.readInts(bookCount);
+            int[] titles = in.readInts(bookCount);
+            int[] cities = in.readInts(bookCount);
+            int[] publishers = in.readInts(bookCount);
+            int[] years = in.readInts(bookCount);
+            int[] editions = in.readInts(bookCount);
+            int[] authorCounts = in.readInts(bookCount);
+            int[] authors = in.readInts(in.readCount());
+
+            int copyCount = in.readCount();
+            long[] copyIds = in.readLongs(copyCount);
+            int[] copyIsbns = in.readInts(copyCount);
+            int[] shelfLocations = in.readInts(copyCount);
+            long[] addedDays = in.readLongs(copyCount);
+            byte[] lentFlags = in.readBytes(copyCount);
+            long[] lentDays = in.readLongs(copyCount);
+
+            int customerCount = in.readCount();
+            long[] customerIds = in.readLongs(customerCount);
+            int[] names = in.readInts(customerCount);
+            int[] firstNames = in.readInts(customerCount);
+            int[] addresses = in.readInts(customerCount);
+            int[] customerCities = in.readInts(customerCount);
+            int[] zipCodes = in.readInts(customerCount);
+            byte[] flags = in.readBytes(customerCount);
+            byte[] loanCounts = in.readBytes(customerCount);
+            long[] loans = in.readLongs(in.readCount());
+            in.verify();
+
+            List<Book> books = new ArrayList<>(bookCount);
+            for (int i = 0, author = 0; i < bookCount; i++) {
+                Set<String> bookAuthors = new HashSet<>();
+                for (int end = author + authorCounts[i]; author < end; author++)
+                    bookAuthors.add(strings[authors[author]]);
+                books.add(new Book(strings[isbns[i]], strings[titles[i]], bookAuthors, years[i], strings[cities[i]],
+                        strings[publishers[i]], editions[i]));
+            }
+            List<BookCopy> bookCopies = new ArrayList<>(copyCount);
+            boolean[] lent = new boolean[copyCount];
+            LocalDate[] lentDates = new LocalDate[copyCount];
+            for (int i = 0; i < copyCount; i++) {
+                lent[i] = lentFlags[i] != 0;
+                lentDates[i] = LocalDate.ofEpochDay(lentDays[i]);
+                bookCopies.add(new BookCopy(copyIds[i], strings[copyIsbns[i]], strings[shelfLocations[i]],
+                        LocalDate.ofEpochDay(addedDays[i]), lent[i], lentDates[i]));
+            }
+            List<Customer> customers = new ArrayList<>(customerCount);
+            for (int i = 0, loan = 0; i < customerCount; i++) {
+                Set<Long> bookCopyIds = new HashSet<>();
+                for (int end = loan + loanCounts[i]; loan < end; loan++)
+                    bookCopyIds.add(loans[loan]);
+                customers.add(new Customer(customerIds[i], strings[names[i]], strings[firstNames[i]],
+                        strings[addresses[i]], strings[customerCities[i]], strings[zipCodes[i]],
+                        (flags[i] & HAS_OVERDRAFT_FEES) != 0, (flags[i] & HAS_PAID_MONTHLY_CONTRIBUTION) != 0,
+                        bookCopyIds));
+            }
+            return new Snapshot(books, bookCopies, customers, lent, lentDates, loanCounts, loans, journalSequence);
+        }
+    }
+
+    private static <T> int[] column(List<T> entities, ToIntFunction<T> value) {
+        int[] column = new int[entities.size()];
+        for (int i = 0; i < column.length; i++)
+            column[i] = value.applyAsInt(entities.get(i));
+        return column;
+    }
+
+    private static <T> long[] longColumn(List<T> entities, ToLongFunction<T> value) {
+        long[] column = new long[entities.size()];
+        for (int i = 0; i < column.length; i++)
+            column[i] = value.applyAsLong(entities.get(i));
+        return column;
+    }
+
+    /**
+     * numbers every distinct string in the order in which it is first seen
+     */
+    private static class StringTable {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private <T> int[] refs(List<T> entities, Function<T, String> value) {
+            int[] column = new int[entities.size()];
+            for (int i = 0; i < column.length; i++) {
+                String string = value.apply(entities.get(i));
+                Integer ref = refs.get(string);
+                if (ref == null) {
+                    ref = values.size();
+                    refs.put(string, ref);
+                    values.add(string);
+                }
+                column[i] = ref;
+            }
+            return column;
+        }
+    }
+
+    /**
+     * writes primitive values through one buffer and computes the checksum of everything written
+     */
+    private static class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 checksum = new CRC32();
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        private void writeInts(int[] values, int count) throws IOException {
+            for (int i = 0; i < count;) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - i, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+        }
+
+        private void writeLongs(long[] values, int count) throws IOException {
+            for (int i = 0; i < count;) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - i, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+        }
+
+        private void writeBytes(byte[] values, int count) throws IOException {
+            for (int i = 0; i < count;) {
+                ensure(1);
+                int n = Math.min(count - i, buffer.remaining());
+                buffer.put(values, i, n);
+                i += n;
+            }
+        }
+
+        /**
+         * appends the checksum and forces the file to disk
+         */
+        private void finish() throws IOException {
+            flush();
+            buffer.putLong(checksum.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+            channel.force(true);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * reads primitive values in bulk through one buffer and computes the checksum of everything read
+     */
+    private static class Input implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 checksum = new CRC32();
+        // Bytes of the buffer in front of this position are already part of the checksum
+        private int checked;
+
+        private Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        private int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        private long readLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        /**
+         * reads a count or a length. It can neither be negative nor larger than the file, so a damaged count is
+         * noticed before arrays are allocated for it
+         */
+        private int readCount() throws IOException {
+            int count = readInt();
+            if (count < 0 || count > channel.size())
+                throw new RuntimeException("Snapshot is damaged");
+            return count;
+        }
+
+        private int[] readInts(int count) throws IOException {
+            int[] values = new int[count];
+            for (int i = 0; i < count;) {
+                ensure(Integer.BYTES);
+                int n = Math.min(count - i, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().get(values, i, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+            return values;
+        }
+
+        private long[] readLongs(int count) throws IOException {
+            long[] values = new long[count];
+            for (int i = 0; i < count;) {
+                ensure(Long.BYTES);
+                int n = Math.min(count - i, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().get(values, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+            return values;
+        }
+
+        private byte[] readBytes(int count) throws IOException {
+            byte[] values = new byte[count];
+            readBytes(values, count);
+            return values;
+        }
+
+        private void readBytes(byte[] values, int count) throws IOException {
+            for (int i = 0; i < count;) {
+                ensure(1);
+                int n = Math.min(count - i, buffer.remaining());
+                buffer.get(values, i, n);
+                i += n;
+            }
+        }
+
+        /**
+         * reads the checksum at the end of the file and compares it with the checksum of everything read before
+         */
+        private void verify() throws IOException {
+            updateChecksum();
+            long expected = checksum.getValue();
+            ensure(Long.BYTES);
+            if (buffer.getLong() != expected)
+                throw new RuntimeException("Snapshot is damaged");
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            updateChecksum();
+            buffer.compact();
+            while (buffer.position() < bytes)
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("Snapshot ends unexpectedly");
+            buffer.flip();
+            checked = 0;
+        }
+
+        private void updateChecksum() {
+            checksum.update(buffer.array(), buffer.arrayOffset() + checked, buffer.position() - checked);
+            checked = buffer.position();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
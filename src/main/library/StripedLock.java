@@ -0,0 +1,85 @@
+package main.library;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * fixed set of locks, every id is mapped to one of them. Operations on different ids usually take different locks
+ * and run in parallel, while operations on the same id are serialized
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * creates at least the given number of stripes, rounded up to a power of two
+     *
+     * @param minimumStripes
+     */
+    StripedLock(int minimumStripes) {
+        if (minimumStripes <= 0)
+            throw new IllegalArgumentException("Number of stripes must be positive");
+        int size = Integer.highestOneBit(minimumStripes);
+        if (size < minimumStripes)
+            size <<= 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+            stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * returns the index of the stripe guarding the given id
+     *
+     * @param id
+     * @return stripe index
+     */
+    int index(long id) {
+        // Fibonacci hashing spreads consecutive ids over all stripes
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (stripes.length - 1);
+    }
+
+    /**
+     * returns the lock guarding the given id
+     *
+     * @param id
+     * @return lock
+     */
+    ReentrantLock get(long id) {
+        return stripes[index(id)];
+    }
+
+    /**
+     * locks the stripes of all given ids, each stripe once and in ascending order. Threads locking several stripes
+     * this way can't deadlock each other or a thread holding a single stripe
+     *
+     * @param ids
+     * @param count number of ids to use
+     * @return locked stripes, to be passed to unlock
+     */
+    int[] lock(long[] ids, int count) {
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++)
+            indexes[i] = index(ids[i]);
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++)
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i])
+                indexes[distinct++] = indexes[i];
+        int[] locked = Arrays.copyOf(indexes, distinct);
+        for (int index : locked)
+            stripes[index].lock();
+        return locked;
+    }
+
+    /**
+     * unlocks the stripes returned by lock
+     *
+     * @param locked
+     */
+    void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--)
+            stripes[locked[i]].unlock();
+    }
+}
@@ -0,0 +1,126 @@
+package main.library;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * word index over the titles of the books of the library. Every word of a normalized title points to the isbns of
+ * the books containing it, the words are kept sorted so that a word prefix is answered with a range lookup.
+ * A query matches a book if every query word is a prefix of one of the title words.
+ * Changes have to be serialized by the caller, searches may run concurrently with them
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class TitleIndex {
+    // Ranks from best to worst
+    private static final int EXACT_TITLE = 0;
+    private static final int TITLE_PREFIX = 1;
+    private static final int ALL_WORDS = 2;
+    private static final int WORD_PREFIXES = 3;
+
+    private final NavigableMap<String, Set<String>> isbnsByWord = new ConcurrentSkipListMap<>();
+    private final Map<String, String> titleByIsbn = new ConcurrentHashMap<>();
+
+    /**
+     * adds the title of the book to the index
+     *
+     * @param book
+     */
+    void add(Book book) {
+        titleByIsbn.put(book.getIsbn(), SearchText.normalize(book.getTitle()));
+        SearchText.tokens(book.getTitle())
+                .forEach(word -> isbnsByWord.computeIfAbsent(word, w -> ConcurrentHashMap.newKeySet()).add(book.getIsbn()));
+    }
+
+    /**
+     * removes the title of the book from the index
+     *
+     * @param book
+     */
+    void remove(Book book) {
+        titleByIsbn.remove(book.getIsbn());
+        SearchText.tokens(book.getTitle()).forEach(word -> {
+            Set<String> isbns = isbnsByWord.get(word);
+            if (isbns == null)
+                return;
+            isbns.remove(book.getIsbn());
+            if (isbns.isEmpty())
+                isbnsByWord.remove(word);
+        });
+    }
+
+    /**
+     * returns the isbns of the books whose title matches the query, best matches first: exact title, title starting
+     * with the query, titles containing all query words, titles containing words starting with the query words.
+     * Within a rank shorter titles come first
+     *
+     * @param query
+     * @param limit maximum number of returned isbns
+     * @return ranked isbns
+     */
+    List<String> search(String query, int limit) {
+        Objects.requireNonNull(query);
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be positive");
+        List<String> words = SearchText.tokens(query);
+        if (words.isEmpty())
+            return List.of();
+        String normalizedQuery = SearchText.normalize(query);
+
+        // Candidates have to match every word, so start with the word matching the fewest books
+        List<Set<String>> matches = new ArrayList<>();
+        for (String word : words) {
+            Set<String> isbns = new HashSet<>();
+            isbnsByWord.subMap(word, true, word + Character.MAX_VALUE, false).values().forEach(isbns::addAll);
+            if (isbns.isEmpty())
+                return List.of();
+            matches.add(isbns);
+        }
+        matches.sort(Comparator.comparingInt(Set::size));
+        Set<String> candidates = matches.get(0);
+        matches.subList(1, matches.size()).forEach(candidates::retainAll);
+
+        Comparator<Match> order = Comparator.comparingInt(Match::rank).thenComparingInt(m -> m.title.length())
+                .thenComparing(Match::title).thenComparing(Match::isbn);
+        // Keeps the best "limit" matches, the worst of them on top
+        PriorityQueue<Match> best = new PriorityQueue<>(order.reversed());
+        for (String isbn : candidates) {
+            String title = titleByIsbn.get(isbn);
+            if (title == null)
+                continue;
+            best.add(new Match(isbn, title, rank(title, normalizedQuery, words)));
+            if (best.size() > limit)
+                best.poll();
+        }
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(order);
+        return ranked.stream().map(Match::isbn).toList();
+    }
+
+    private int rank(String title, String normalizedQuery, List<String> words) {
+        if (title.equals(normalizedQuery))
+            return EXACT_TITLE;
+        if (title.startsWith(normalizedQuery))
+            return TITLE_PREFIX;
+        if (containsAllWords(title, words))
+            return ALL_WORDS;
+        return WORD_PREFIXES;
+    }
+
+    private boolean containsAllWords(String title, List<String> words) {
+        return SearchText.tokens(title).containsAll(words);
+    }
+
+    private record Match(String isbn, String title, int rank) {
+    }
+}
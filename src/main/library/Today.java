@@ -0,0 +1,57 @@
+package main.library;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * returns the current date of a clock. The date is computed once per day and then shared, so asking for it on every
+ * lending does not create a new LocalDate
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+class Today {
+    private final Clock clock;
+    private volatile Day day;
+
+    Today(Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
+        this.day = Day.of(LocalDate.now(clock), clock);
+    }
+
+    /**
+     * returns the current date
+     *
+     * @return current date
+     */
+    LocalDate get() {
+        long now = clock.millis();
+        Day current = day;
+        if (now < current.startMillis || now >= current.endMillis) {
+            current = Day.of(LocalDate.now(clock), clock);
+            day = current;
+        }
+        return current.date;
+    }
+
+    /**
+     * a date and the milliseconds at which it begins and ends in the zone of the clock
+     */
+    private static class Day {
+        private final LocalDate date;
+        private final long startMillis;
+        private final long endMillis;
+
+        private Day(LocalDate date, long startMillis, long endMillis) {
+            this.date = date;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        private static Day of(LocalDate date, Clock clock) {
+            return new Day(date, date.atStartOfDay(clock.getZone()).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli());
+        }
+    }
+}
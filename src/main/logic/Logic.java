@@ -1,5 +1,10 @@
 package main.logic;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -8,35 +13,57 @@ import main.library.Book;
 import main.library.BookCopy;
 import main.library.Customer;
 import main.library.Library;
+import main.library.Operation;
+import main.library.Page;
 
 
 /**
- * implements some functions of the library
+ * implements some functions of the library. The searches via ISBN, title and author are answered from the search
+ * cache of the library as long as no books or copies were added or removed
  *
  * @author Ahmad Al-Salameh (aa082)
  *
  */
 public class Logic {
+    /**
+     * maximum number of books whose copies are returned by searchViaTitle
+     */
+    public static final int TITLE_SEARCH_LIMIT = 50;
 
+    /**
+     * looks for book copies by ISBN using the ISBN index of the library
+     * @param isbn
+     * @param library
+     * @return setOfBookCopies
+     */
     public static Set<BookCopy> searchViaISBN(final String isbn, final Library library) {
         Objects.requireNonNull(isbn);
         Objects.requireNonNull(library);
-        Set<BookCopy> setOfBookCopies = library.getBookCopies().stream().filter(book -> book.getIsbn().equals(isbn))
-                .collect(Collectors.toUnmodifiableSet());
+        return library.getMetrics().measure(Operation.SEARCH_VIA_ISBN, () -> library.getSearchCache()
+                .get(Operation.SEARCH_VIA_ISBN, isbn, () -> copiesByIsbn(isbn, library)));
+    }
+
+    private static Set<BookCopy> copiesByIsbn(final String isbn, final Library library) {
+        Set<BookCopy> setOfBookCopies = library.getBookCopiesByIsbn(isbn);
         if (setOfBookCopies.isEmpty()) {
             throw (new RuntimeException("ISBN not found"));
         }
         return setOfBookCopies;
     }
     /**
-     * looks for book copies by ISBN using a filter and adds those found to a Set
+     * looks for the copies of a book using the ISBN index of the library
      * @param book
      * @param library
      * @return setOfBookCopies
      */
     public static Set<BookCopy> findMatchingCopies(final Book book, final Library library) {
-        Set<BookCopy> setOfBookCopies = library.getBookCopies().stream()
-                .filter(bookCopy -> bookCopy.getIsbn().equals(book.getIsbn())).collect(Collectors.toUnmodifiableSet());
+        Objects.requireNonNull(book);
+        Objects.requireNonNull(library);
+        return library.getMetrics().measure(Operation.FIND_MATCHING_COPIES, () -> copiesOf(book, library));
+    }
+
+    private static Set<BookCopy> copiesOf(final Book book, final Library library) {
+        Set<BookCopy> setOfBookCopies = library.getBookCopiesByIsbn(book.getIsbn());
         if (setOfBookCopies.isEmpty()) {
             throw (new RuntimeException("Copies not found"));
         }
@@ -44,21 +71,52 @@ public class Logic {
     }
 
     /**
-     * searches a book copy via title using a filter
-     * @param title of the book
+     * searches the book copies via title using the title index of the library. Every word of the given title has to be
+     * the beginning of a word of the book title, case and diacritics are ignored. The copies of the best matching books
+     * come first
+     * @param title of the book, or the beginning of its words
      * @param library
-     * @return book copy
+     * @return book copies of the at most TITLE_SEARCH_LIMIT best matching books
      */
     public static Set<BookCopy> searchViaTitle(final String title, final Library library) {
         Objects.requireNonNull(title);
         Objects.requireNonNull(library);
-        Book foundBook = library.getBooks().stream().filter(book -> book.getTitle().contentEquals(title)).findAny()
-                .orElseThrow(() -> new RuntimeException("Book with title not found"));
-        return findMatchingCopies(foundBook, library);
+        return library.getMetrics().measure(Operation.SEARCH_VIA_TITLE, () -> library.getSearchCache()
+                .get(Operation.SEARCH_VIA_TITLE, title, () -> copiesByTitle(title, library)));
+    }
+
+    private static Set<BookCopy> copiesByTitle(final String title, final Library library) {
+        List<Book> foundBooks = booksByTitle(title, TITLE_SEARCH_LIMIT, library);
+        if (foundBooks.isEmpty())
+            throw new RuntimeException("Book with title not found");
+        Set<BookCopy> setOfBookCopies = foundBooks.stream().map(book -> library.getBookCopiesByIsbn(book.getIsbn()))
+                .flatMap(Set::stream).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (setOfBookCopies.isEmpty())
+            throw new RuntimeException("Copies not found");
+        return Collections.unmodifiableSet(setOfBookCopies);
+    }
+
+    /**
+     * searches the books via title using the title index of the library, best matches first
+     * @param title of the book, or the beginning of its words
+     * @param limit maximum number of returned books
+     * @param library
+     * @return ranked books
+     */
+    public static List<Book> searchBooksViaTitle(final String title, final int limit, final Library library) {
+        Objects.requireNonNull(title);
+        Objects.requireNonNull(library);
+        return library.getMetrics().measure(Operation.SEARCH_BOOKS_VIA_TITLE,
+                () -> booksByTitle(title, limit, library));
+    }
+
+    private static List<Book> booksByTitle(final String title, final int limit, final Library library) {
+        return library.searchBooksByTitle(title, limit);
     }
 
     /**
-     * searches a book copy via author using a filter
+     * searches the book copies of an author using the author index of the library.
+     * Case, diacritics and surrounding whitespace of the name are ignored
      * @param author of the book
      * @param library
      * @return book copy
@@ -66,14 +124,70 @@ public class Logic {
     public static Set<BookCopy> searchViaAuthor(final String author, final Library library) {
         Objects.requireNonNull(author);
         Objects.requireNonNull(library);
-        library.getBooks().stream().filter(book -> book.getAuthors().contains(author)).findAny()
-                .orElseThrow(() -> new RuntimeException("Book with author not found"));
-        return library.getBooks().stream().filter(book -> book.getAuthors().contains(author))
-                .map(book -> findMatchingCopies(book, library)).flatMap(Set::stream).collect(Collectors.toSet());
+        return library.getMetrics().measure(Operation.SEARCH_VIA_AUTHOR, () -> library.getSearchCache()
+                .get(Operation.SEARCH_VIA_AUTHOR, author, () -> copiesByAuthor(author, library)));
+    }
+
+    private static Set<BookCopy> copiesByAuthor(final String author, final Library library) {
+        Set<Book> foundBooks = library.getBooksByAuthor(author);
+        if (foundBooks.isEmpty())
+            throw new RuntimeException("Book with author not found");
+        return foundBooks.stream().map(book -> copiesOf(book, library)).flatMap(Set::stream)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * searches the book copies of an author like searchViaAuthor, page by page. The copies are sorted by ISBN and id,
+     * only the ISBNs of the author are sorted and only the copies of the books on the page are read
+     * @param author of the book
+     * @param pageSize maximum number of copies on the page
+     * @param pageToken token of the previous page, null for the first page
+     * @param library
+     * @return page of book copies
+     */
+    public static Page<BookCopy> searchViaAuthor(final String author, final int pageSize, final String pageToken,
+            final Library library) {
+        Objects.requireNonNull(author);
+        Objects.requireNonNull(library);
+        Page.checkPageSize(pageSize);
+        return library.getMetrics().measure(Operation.SEARCH_VIA_AUTHOR,
+                () -> copiesByAuthor(author, pageSize, pageToken, library));
+    }
+
+    private static Page<BookCopy> copiesByAuthor(final String author, final int pageSize, final String pageToken,
+            final Library library) {
+        Set<Book> foundBooks = library.getBooksByAuthor(author);
+        if (foundBooks.isEmpty())
+            throw new RuntimeException("Book with author not found");
+        // The token holds the id and the ISBN of the last copy of the previous page
+        final String afterIsbn = pageToken == null ? "" : pageToken.substring(pageToken.indexOf(':') + 1);
+        final long afterId;
+        try {
+            afterId = pageToken == null ? Long.MIN_VALUE
+                    : Long.parseLong(pageToken.substring(0, pageToken.indexOf(':')));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+        List<String> isbns = foundBooks.stream().map(Book::getIsbn).filter(isbn -> isbn.compareTo(afterIsbn) >= 0)
+                .sorted().toList();
+        List<BookCopy> items = new ArrayList<>(Math.min(pageSize, 1024));
+        for (String isbn : isbns) {
+            List<BookCopy> copies = library.getBookCopiesByIsbn(isbn).stream()
+                    .filter(bookCopy -> !isbn.equals(afterIsbn) || bookCopy.getIdValue() > afterId)
+                    .sorted(Comparator.comparingLong(BookCopy::getIdValue)).toList();
+            for (BookCopy bookCopy : copies) {
+                if (items.size() == pageSize) {
+                    BookCopy last = items.get(pageSize - 1);
+                    return new Page<>(items, last.getIdValue() + ":" + last.getIsbn());
+                }
+                items.add(bookCopy);
+            }
+        }
+        return new Page<>(items, null);
     }
 
     /**
-     * searches a customer via id using a filter
+     * searches a customer via id using the customer index of the library
      * @param customerId
      * @param library
      * @return customer
@@ -81,12 +195,15 @@ public class Logic {
     public static Customer searchCustomerViaId(final Long customerId, Library library) {
         Objects.requireNonNull(customerId);
         Objects.requireNonNull(library);
-        return library.getCustomers().stream().filter(customer -> customer.getId().equals(customerId)).findAny()
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return library.getMetrics().measure(Operation.SEARCH_CUSTOMER_VIA_ID, () -> customerById(customerId, library));
+    }
+
+    private static Customer customerById(final Long customerId, Library library) {
+        return library.getCustomer(customerId).orElseThrow(() -> new RuntimeException("User not found"));
     }
     /**
-     * looks for a book via its ISBN by comparing the given ISBN with the ISBN of a stream of books
-     * if it doesn't any it throws a RuntimeException
+     * looks for a book via its ISBN in the book index of the library
+     * if it doesn't find any it throws a RuntimeException
      * @param isbn
      * @param library
      * @throws RuntimeException
@@ -94,8 +211,11 @@ public class Logic {
     public static Book getBookViaISBN(final String isbn, Library library) {
         Objects.requireNonNull(isbn);
         Objects.requireNonNull(library);
-        return library.getBooks().stream().filter(book -> book.getIsbn().equals(isbn)).findAny()
-                .orElseThrow(() -> new RuntimeException("Book not found"));
+        return library.getMetrics().measure(Operation.GET_BOOK_VIA_ISBN, () -> bookByIsbn(isbn, library));
+    }
+
+    private static Book bookByIsbn(final String isbn, Library library) {
+        return library.getBook(isbn).orElseThrow(() -> new RuntimeException("Book not found"));
     }
 
 }
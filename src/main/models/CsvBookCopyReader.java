@@ -0,0 +1,40 @@
+package main.models;
+
+import java.io.IOException;
+
+import main.library.BookCopy;
+
+/**
+ * reads book copies from a CSV file with the columns of {@link CsvBookCopyModel}, dates are written as yyyy-MM-dd
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class CsvBookCopyReader extends CsvEntityReader<BookCopy> {
+    private static final int ID = 0;
+    private static final int BOOK_ISBN = 1;
+    private static final int SHELF_LOCATION = 2;
+    private static final int ADDED_TO_LIBRARY = 3;
+    private static final int LENT = 4;
+    private static final int LENT_DATE = 5;
+
+    public CsvBookCopyReader(CsvScanner scanner) throws IOException {
+        super(scanner, new String[] { "id", "bookIsbn", "shelfLocation", "addedToLibrary", "lent", "lentDate" });
+    }
+
+    private CsvBookCopyReader(CsvScanner scanner, CsvBookCopyReader header) {
+        super(scanner, header);
+    }
+
+    @Override
+    public CsvBookCopyReader forPart(CsvScanner scanner) {
+        return new CsvBookCopyReader(scanner, this);
+    }
+
+    @Override
+    protected BookCopy decode() {
+        return new BookCopy(scanner.getLong(field(ID)), scanner.getString(field(BOOK_ISBN)),
+                scanner.getString(field(SHELF_LOCATION)), scanner.getDate(field(ADDED_TO_LIBRARY)),
+                scanner.getBoolean(field(LENT)), scanner.getDate(field(LENT_DATE)));
+    }
+}
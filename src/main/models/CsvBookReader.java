@@ -0,0 +1,56 @@
+package main.models;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import main.library.Book;
+
+/**
+ * reads books from a CSV file with the columns of {@link CsvBookModel}, authors are separated by ", "
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class CsvBookReader extends CsvEntityReader<Book> {
+    private static final int ISBN = 0;
+    private static final int TITLE = 1;
+    private static final int AUTHORS = 2;
+    private static final int YEAR = 3;
+    private static final int CITY = 4;
+    private static final int PUBLISHER = 5;
+    private static final int EDITION = 6;
+
+    public CsvBookReader(CsvScanner scanner) throws IOException {
+        super(scanner, new String[] { "isbn", "title", "authors", "year", "city", "publisher", "edition" });
+    }
+
+    private CsvBookReader(CsvScanner scanner, CsvBookReader header) {
+        super(scanner, header);
+    }
+
+    @Override
+    public CsvBookReader forPart(CsvScanner scanner) {
+        return new CsvBookReader(scanner, this);
+    }
+
+    @Override
+    protected Book decode() {
+        return new Book(scanner.getString(field(ISBN)), scanner.getString(field(TITLE)),
+                authors(scanner.getString(field(AUTHORS))), scanner.getInt(field(YEAR)),
+                scanner.getString(field(CITY)), scanner.getString(field(PUBLISHER)), scanner.getInt(field(EDITION)));
+    }
+
+    private static Set<String> authors(String value) {
+        Set<String> authors = new HashSet<>();
+        int start = 0;
+        for (int end = value.indexOf(", "); end >= 0; end = value.indexOf(", ", start)) {
+            if (end > start)
+                authors.add(value.substring(start, end));
+            start = end + 2;
+        }
+        if (start < value.length())
+            authors.add(value.substring(start));
+        return authors;
+    }
+}
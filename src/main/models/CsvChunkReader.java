@@ -0,0 +1,176 @@
+package main.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * reads a CSV file in parallel. The rows behind the header are split into chunks of about the same size by a task of
+ * its own, so several files are split at the same time, then every chunk is memory mapped and decoded by its own
+ * task. Chunks only end at line breaks outside of quoted fields, so no row is cut in two.
+ * A file compressed with gzip can't be split, it is decoded as a single chunk
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public final class CsvChunkReader {
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // States of the split scan, they follow the rules of CsvScanner
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+    private static final int AFTER_QUOTED = 4;
+
+    private CsvChunkReader() {
+    }
+
+    /**
+     * splits the file into chunks on the executor and starts a task on the executor for every chunk
+     *
+     * @param path
+     * @param factory opens the reader for the header of the file
+     * @param executor runs the split and the chunk tasks
+     * @param parallelism number of threads the chunks are spread over
+     * @return future completing once the file is split, with one future per chunk in file order, each completing with
+     *         the entities of its chunk
+     */
+    public static <T> CompletableFuture<List<CompletableFuture<List<T>>>> read(Path path,
+            CsvEntityReader.Factory<T> factory, Executor executor, int parallelism) {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(factory);
+        Objects.requireNonNull(executor);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return start(path, factory, executor, parallelism);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> List<CompletableFuture<List<T>>> start(Path path, CsvEntityReader.Factory<T> factory,
+            Executor executor, int parallelism) throws IOException {
+        if (CsvScanner.isGzip(path))
+            return List.of(CompletableFuture.supplyAsync(() -> decodeAll(path, factory), executor));
+        CsvEntityReader<T> header;
+        try (CsvScanner scanner = CsvScanner.open(path)) {
+            header = factory.open(scanner);
+        }
+        List<CompletableFuture<List<T>>> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / (4L * Math.max(1, parallelism))));
+            for (Chunk chunk : split(channel, header.scanner.getOffset(), header.scanner.getRow(), chunkSize))
+                chunks.add(CompletableFuture.supplyAsync(() -> decode(path, chunk, header), executor));
+        }
+        return chunks;
+    }
+
+    /**
+     * finds the chunk boundaries by following the quoting of the fields, the first line break outside of a quoted
+     * field behind every chunkSize bytes ends a chunk
+     */
+    private static List<Chunk> split(FileChannel channel, long start, long rowsBefore, long chunkSize)
+            throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long chunkStart = start;
+        long chunkRows = rowsBefore;
+        long rows = rowsBefore;
+        long offset = start;
+        int state = FIELD_START;
+        while (channel.read(buffer, offset) > 0) {
+            buffer.flip();
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < buffer.limit(); i++, offset++) {
+                byte b = bytes[i];
+                boolean rowEnd = false;
+                switch (state) {
+                case FIELD_START:
+                    if (b == '"')
+                        state = QUOTED;
+                    else if (b == '\n' || b == '\r')
+                        rowEnd = true;
+                    else if (b != ';' && b != ' ' && b != '\t')
+                        state = UNQUOTED;
+                    break;
+                case QUOTED:
+                    if (b == '"')
+                        state = QUOTE_IN_QUOTED;
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if (b == '"')
+                        state = QUOTED;
+                    else if (b == '\n' || b == '\r')
+                        rowEnd = true;
+                    else
+                        state = b == ';' ? FIELD_START : AFTER_QUOTED;
+                    break;
+                default:
+                    if (b == '\n' || b == '\r')
+                        rowEnd = true;
+                    else if (b == ';')
+                        state = FIELD_START;
+                    break;
+                }
+                if (!rowEnd)
+                    continue;
+                state = FIELD_START;
+                if (b != '\n')
+                    continue;
+                rows++;
+                if (offset + 1 - chunkStart >= chunkSize) {
+                    chunks.add(new Chunk(chunkStart, offset + 1, chunkRows));
+                    chunkStart = offset + 1;
+                    chunkRows = rows;
+                }
+            }
+            buffer.clear();
+        }
+        if (offset > chunkStart)
+            chunks.add(new Chunk(chunkStart, offset, chunkRows));
+        return chunks;
+    }
+
+    private static <T> List<T> decode(Path path, Chunk chunk, CsvEntityReader<T> header) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+            List<T> entities = new ArrayList<>();
+            CsvEntityReader<T> reader = header.forPart(new CsvScanner(data, chunk.rowsBefore));
+            for (T entity = reader.next(); entity != null; entity = reader.next())
+                entities.add(entity);
+            return entities;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> List<T> decodeAll(Path path, CsvEntityReader.Factory<T> factory) {
+        try (CsvEntityReader<T> reader = factory.open(CsvScanner.open(path))) {
+            List<T> entities = new ArrayList<>();
+            for (T entity = reader.next(); entity != null; entity = reader.next())
+                entities.add(entity);
+            return entities;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * bytes of the file from start (inclusive) to end (exclusive), behind rowsBefore rows
+     */
+    private record Chunk(long start, long end, long rowsBefore) {
+    }
+}
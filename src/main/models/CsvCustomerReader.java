@@ -0,0 +1,73 @@
+package main.models;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import main.library.Customer;
+
+/**
+ * reads customers from a CSV file with the columns of {@link CsvCustomerModel}. The ids of the lent book copies are
+ * separated by ",", the column may be empty or missing
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class CsvCustomerReader extends CsvEntityReader<Customer> {
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int ADDRESS = 3;
+    private static final int ZIP_CODE = 4;
+    private static final int CITY = 5;
+    private static final int HAS_OVERDRAFT_FEES = 6;
+    private static final int HAS_PAID_MONTHLY_CONTRIBUTION = 7;
+    private static final int BOOK_IDS = 8;
+
+    public CsvCustomerReader(CsvScanner scanner) throws IOException {
+        super(scanner, new String[] { "id", "name", "firstName", "address", "zipCode", "city", "hasOverdraftFees",
+                "hasPaidMonthlyContribution" }, "bookIds");
+    }
+
+    private CsvCustomerReader(CsvScanner scanner, CsvCustomerReader header) {
+        super(scanner, header);
+    }
+
+    @Override
+    public CsvCustomerReader forPart(CsvScanner scanner) {
+        return new CsvCustomerReader(scanner, this);
+    }
+
+    @Override
+    protected Customer decode() {
+        Set<Long> bookIds = bookIds();
+        if (bookIds.size() > Customer.MAX_BOOK_COPIES)
+            throw new RuntimeException("Customer has more than 5 books when import Customer");
+        return new Customer(scanner.getLong(field(ID)), scanner.getString(field(NAME)),
+                scanner.getString(field(FIRST_NAME)), scanner.getString(field(ADDRESS)),
+                scanner.getString(field(CITY)), scanner.getString(field(ZIP_CODE)),
+                scanner.getBoolean(field(HAS_OVERDRAFT_FEES)), scanner.getBoolean(field(HAS_PAID_MONTHLY_CONTRIBUTION)),
+                bookIds);
+    }
+
+    private Set<Long> bookIds() {
+        int field = field(BOOK_IDS);
+        if (field == MISSING || scanner.isEmpty(field))
+            return Set.of();
+        String value = scanner.getString(field);
+        Set<Long> bookIds = new HashSet<>();
+        int start = 0;
+        for (int end = value.indexOf(','); start <= value.length(); end = value.indexOf(',', start)) {
+            if (end < 0)
+                end = value.length();
+            String id = value.substring(start, end).trim();
+            try {
+                bookIds.add(Long.valueOf(id));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid book copy id '" + id + "' in row " + scanner.getRow());
+            }
+            start = end + 1;
+        }
+        return bookIds;
+    }
+}
@@ -0,0 +1,122 @@
+package main.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * reads the rows of a CSV file with a header row and decodes every row into an entity. The header is read once and
+ * the columns are looked up by name, ignoring case, so their order in the file does not matter
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ * @param <T> type of the entities
+ */
+public abstract class CsvEntityReader<T> implements Closeable {
+    protected static final int MISSING = -1;
+
+    protected final CsvScanner scanner;
+    private final int[] columns;
+
+    /**
+     * reads the header row and finds the columns with the given names. If the header is invalid the scanner is
+     * closed
+     *
+     * @param scanner
+     * @param required names of the columns the file has to contain
+     * @param optional names of the columns the file may contain
+     * @throws IOException
+     */
+    protected CsvEntityReader(CsvScanner scanner, String[] required, String... optional) throws IOException {
+        this.scanner = Objects.requireNonNull(scanner);
+        this.columns = new int[required.length + optional.length];
+        Arrays.fill(columns, MISSING);
+        try {
+            if (scanner.nextRow()) {
+                for (int field = 0; field < scanner.getFieldCount(); field++) {
+                    if (scanner.isEmpty(field))
+                        continue;
+                    String name = scanner.getString(field).trim().toLowerCase(Locale.ROOT);
+                    for (int column = 0; column < columns.length; column++) {
+                        String expected = column < required.length ? required[column]
+                                : optional[column - required.length];
+                        if (columns[column] == MISSING && expected.toLowerCase(Locale.ROOT).equals(name))
+                            columns[column] = field;
+                    }
+                }
+            }
+            for (int column = 0; column < required.length; column++)
+                if (columns[column] == MISSING)
+                    throw new RuntimeException("Column " + required[column] + " not found in CSV header");
+        } catch (IOException | RuntimeException e) {
+            scanner.close();
+            throw e;
+        }
+    }
+
+    /**
+     * creates a reader for a part of the same file behind the header, its rows are decoded with the columns found
+     * in the header of the given reader
+     *
+     * @param scanner scanner over the part of the file
+     * @param header reader that has read the header of the file
+     */
+    protected CsvEntityReader(CsvScanner scanner, CsvEntityReader<T> header) {
+        this.scanner = Objects.requireNonNull(scanner);
+        this.columns = header.columns;
+    }
+
+    /**
+     * returns a reader for a part of the same file that has no header, see
+     * {@link #CsvEntityReader(CsvScanner, CsvEntityReader)}
+     *
+     * @param scanner scanner over the part of the file
+     * @return reader
+     */
+    public abstract CsvEntityReader<T> forPart(CsvScanner scanner);
+
+    /**
+     * reads the next row
+     *
+     * @return entity of the row or null if there are no more rows
+     * @throws IOException
+     */
+    public T next() throws IOException {
+        return scanner.nextRow() ? decode() : null;
+    }
+
+    /**
+     * decodes the current row of the scanner
+     *
+     * @return entity of the row
+     */
+    protected abstract T decode();
+
+    /**
+     * returns the field index of a column, in the order in which the names were passed to the constructor, required
+     * columns first
+     *
+     * @param column
+     * @return field index or MISSING
+     */
+    protected int field(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+    /**
+     * creates a reader that reads the header from the scanner
+     *
+     * @param <T> type of the entities
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        CsvEntityReader<T> open(CsvScanner scanner) throws IOException;
+    }
+}
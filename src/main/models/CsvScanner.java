@@ -0,0 +1,542 @@
+package main.models;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * reads ';'-separated CSV rows straight from UTF-8 bytes. A row is split into fields by remembering where each field
+ * starts and ends in the buffer, values are only decoded when they are asked for, numbers, booleans and dates without
+ * creating a String first. Fields may be quoted with '"', a quote inside a quoted field is written as "".
+ * Whitespace in front of a quote is ignored, rows end with \n or \r\n and empty rows are skipped. Files compressed
+ * with gzip are recognized by their first bytes and decompressed while they are read
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public class CsvScanner implements Closeable {
+    private static final byte SEPARATOR = ';';
+    private static final byte QUOTE = '"';
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    // Set if the file is memory mapped window by window instead of read into the buffer
+    private final FileChannel mappedFile;
+    private int windowSize;
+    private ByteBuffer data;
+    // Offset in the input of the first byte of the buffer
+    private long dataOffset;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private long row;
+
+    private int fieldCount;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private boolean[] fieldEscaped = new boolean[16];
+    private byte[] scratch = new byte[256];
+
+    /**
+     * creates a scanner reading the given channel
+     *
+     * @param channel
+     */
+    public CsvScanner(ReadableByteChannel channel) {
+        this.channel = Objects.requireNonNull(channel);
+        this.mappedFile = null;
+        this.data = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private CsvScanner(FileChannel file, int windowSize) throws IOException {
+        this.channel = file;
+        this.mappedFile = file;
+        this.windowSize = windowSize;
+        this.data = ByteBuffer.allocate(0);
+        remap();
+    }
+
+    /**
+     * creates a scanner over data that is already complete, e.g. a memory mapped part of a file.
+     * The scanner never reads more data and closing it does nothing
+     *
+     * @param data bytes between position and limit are scanned
+     */
+    public CsvScanner(ByteBuffer data) {
+        this(data, 0);
+    }
+
+    /**
+     * creates a scanner over a part of a file that starts behind the given number of rows, so that error messages
+     * name the row in the whole file
+     *
+     * @param data bytes between position and limit are scanned
+     * @param rowsBefore number of rows in front of the data
+     */
+    public CsvScanner(ByteBuffer data, long rowsBefore) {
+        this.channel = null;
+        this.mappedFile = null;
+        this.data = Objects.requireNonNull(data);
+        this.dataOffset = -data.position();
+        this.position = data.position();
+        this.limit = data.limit();
+        this.endOfInput = true;
+        this.row = rowsBefore;
+    }
+
+    /**
+     * opens a scanner over the file at the given path
+     *
+     * @param path
+     * @return scanner
+     * @throws IOException
+     */
+    public static CsvScanner open(Path path) throws IOException {
+        if (isGzip(path))
+            return new CsvScanner(Channels.newChannel(openInput(path)));
+        return new CsvScanner(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * opens the file at the given path as a stream, a file compressed with gzip is decompressed while it is read
+     *
+     * @param path
+     * @return stream of the uncompressed bytes
+     * @throws IOException
+     */
+    public static InputStream openInput(Path path) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        try {
+            input.mark(2);
+            boolean gzip = readMagic(input);
+            input.reset();
+            return gzip ? new GZIPInputStream(input, BUFFER_SIZE) : input;
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * returns true if the file at the given path starts like a file compressed with gzip
+     *
+     * @param path
+     * @return true/false
+     * @throws IOException
+     */
+    public static boolean isGzip(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return readMagic(input);
+        }
+    }
+
+    private static boolean readMagic(InputStream input) throws IOException {
+        return (input.read() | input.read() << 8) == GZIPInputStream.GZIP_MAGIC;
+    }
+
+    /**
+     * opens a scanner that memory maps the file at the given path instead of reading it. Only a window of the file is
+     * mapped at a time, when a row reaches past the window the next window is mapped starting with that row. A file
+     * compressed with gzip can't be mapped, it is read like {@link #open(Path)} does
+     *
+     * @param path
+     * @return scanner
+     * @throws IOException
+     */
+    public static CsvScanner map(Path path) throws IOException {
+        return map(path, WINDOW_SIZE);
+    }
+
+    /**
+     * opens a scanner that memory maps the file window by window, see {@link #map(Path)}
+     *
+     * @param path
+     * @param windowSize number of bytes mapped at a time, grows if a single row does not fit
+     * @return scanner
+     * @throws IOException
+     */
+    public static CsvScanner map(Path path, int windowSize) throws IOException {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("Window size must be positive");
+        if (isGzip(path))
+            return open(path);
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new CsvScanner(file, windowSize);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * moves to the next non-empty row
+     *
+     * @return false if there are no more rows
+     * @throws IOException
+     */
+    public boolean nextRow() throws IOException {
+        while (true) {
+            int end = scanRow(position);
+            if (end < 0) {
+                // The row continues behind the buffered data
+                if (!fill())
+                    end = limit;
+                else
+                    continue;
+            }
+            if (end == limit && end == position)
+                return false;
+            row++;
+            int next = end;
+            if (next < limit && data.get(next) == '\r')
+                next++;
+            if (next < limit && data.get(next) == '\n')
+                next++;
+            boolean empty = fieldCount == 1 && fieldStart[0] == fieldEnd[0] && !isQuote(fieldStart[0] - 1);
+            position = next;
+            if (row == 1)
+                skipByteOrderMark();
+            if (!empty)
+                return true;
+        }
+    }
+
+    /**
+     * returns the number of the current row, starting at 1 for the first row
+     *
+     * @return row number
+     */
+    public long getRow() {
+        return row;
+    }
+
+    /**
+     * returns the offset in the input of the first byte behind the current row
+     *
+     * @return offset in bytes
+     */
+    public long getOffset() {
+        return dataOffset + position;
+    }
+
+    /**
+     * returns the number of fields of the current row
+     *
+     * @return number of fields
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * returns true if the field is missing or has no content
+     *
+     * @param field index of the field
+     * @return true/false
+     */
+    public boolean isEmpty(int field) {
+        return field >= fieldCount || fieldStart[field] == fieldEnd[field];
+    }
+
+    /**
+     * decodes the field as a String
+     *
+     * @param field index of the field
+     * @return value
+     */
+    public String getString(int field) {
+        check(field);
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        String value;
+        if (data.hasArray()) {
+            value = new String(data.array(), data.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        } else {
+            if (scratch.length < length)
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            data.get(start, scratch, 0, length);
+            value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return fieldEscaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * decodes the field as a long, surrounding whitespace is ignored
+     *
+     * @param field index of the field
+     * @return value
+     */
+    public long getLong(int field) {
+        check(field);
+        int start = skipWhitespace(fieldStart[field], fieldEnd[field]);
+        int end = trimWhitespace(start, fieldEnd[field]);
+        boolean negative = start < end && data.get(start) == '-';
+        if (start < end && (data.get(start) == '-' || data.get(start) == '+'))
+            start++;
+        if (start == end)
+            throw invalid(field, "number");
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw invalid(field, "number");
+            // Accumulate negatively so that Long.MIN_VALUE can be read as well
+            if (value < (Long.MIN_VALUE + digit) / 10)
+                throw invalid(field, "number");
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE)
+            throw invalid(field, "number");
+        return negative ? value : -value;
+    }
+
+    /**
+     * decodes the field as an int, surrounding whitespace is ignored
+     *
+     * @param field index of the field
+     * @return value
+     */
+    public int getInt(int field) {
+        long value = getLong(field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw invalid(field, "number");
+        return (int) value;
+    }
+
+    /**
+     * decodes the field as a boolean. Like the bean binding it accepts true/false, yes/no, y/n, on/off and 1/0,
+     * ignoring case and surrounding whitespace
+     *
+     * @param field index of the field
+     * @return value
+     */
+    public boolean getBoolean(int field) {
+        check(field);
+        int start = skipWhitespace(fieldStart[field], fieldEnd[field]);
+        int end = trimWhitespace(start, fieldEnd[field]);
+        if (matches(start, end, "true") || matches(start, end, "yes") || matches(start, end, "y")
+                || matches(start, end, "on") || matches(start, end, "1"))
+            return true;
+        if (matches(start, end, "false") || matches(start, end, "no") || matches(start, end, "n")
+                || matches(start, end, "off") || matches(start, end, "0"))
+            return false;
+        throw invalid(field, "boolean");
+    }
+
+    /**
+     * decodes the field as a date in the format yyyy-MM-dd, surrounding whitespace is ignored
+     *
+     * @param field index of the field
+     * @return value
+     */
+    public LocalDate getDate(int field) {
+        check(field);
+        int start = skipWhitespace(fieldStart[field], fieldEnd[field]);
+        int end = trimWhitespace(start, fieldEnd[field]);
+        if (end - start != 10 || data.get(start + 4) != '-' || data.get(start + 7) != '-')
+            throw invalid(field, "date (yyyy-MM-dd)");
+        try {
+            return LocalDate.of(digits(field, start, 4), digits(field, start + 5, 2), digits(field, start + 8, 2));
+        } catch (java.time.DateTimeException e) {
+            throw invalid(field, "date (yyyy-MM-dd)");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null)
+            channel.close();
+    }
+
+    /**
+     * splits the row starting at the given offset into fields
+     *
+     * @return offset of the end of the row, -1 if the row is not complete in the buffer
+     */
+    private int scanRow(int start) {
+        fieldCount = 0;
+        int i = start;
+        while (true) {
+            // Whitespace in front of a quote is ignored
+            int content = i;
+            while (content < limit && (data.get(content) == ' ' || data.get(content) == '\t'))
+                content++;
+            if (content < limit && data.get(content) == QUOTE) {
+                boolean escaped = false;
+                int j = content + 1;
+                while (true) {
+                    if (j >= limit)
+                        return endOfInput ? addUnterminated(content + 1) : -1;
+                    if (data.get(j) == QUOTE) {
+                        if (j + 1 >= limit && !endOfInput)
+                            return -1;
+                        if (j + 1 < limit && data.get(j + 1) == QUOTE) {
+                            escaped = true;
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                addField(content + 1, j, escaped);
+                // Anything between the closing quote and the next separator is dropped
+                i = j + 1;
+                while (i < limit && !isRowEnd(i) && data.get(i) != SEPARATOR)
+                    i++;
+            } else {
+                int j = i;
+                while (j < limit && !isRowEnd(j) && data.get(j) != SEPARATOR)
+                    j++;
+                addField(i, j, false);
+                i = j;
+            }
+            if (i >= limit)
+                return endOfInput ? limit : -1;
+            if (isRowEnd(i))
+                return i;
+            // Separator
+            i++;
+        }
+    }
+
+    private int addUnterminated(int start) {
+        addField(start, limit, false);
+        return limit;
+    }
+
+    private void addField(int start, int end, boolean escaped) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, 2 * fieldCount);
+            fieldEnd = Arrays.copyOf(fieldEnd, 2 * fieldCount);
+            fieldEscaped = Arrays.copyOf(fieldEscaped, 2 * fieldCount);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldEscaped[fieldCount] = escaped;
+        fieldCount++;
+    }
+
+    private boolean isRowEnd(int i) {
+        byte b = data.get(i);
+        return b == '\n' || b == '\r';
+    }
+
+    private boolean isQuote(int i) {
+        return i >= 0 && i < limit && data.get(i) == QUOTE;
+    }
+
+    /**
+     * moves the unread bytes to the front of the buffer and reads more, growing the buffer if a single row does not
+     * fit into it
+     *
+     * @return false if there was nothing more to read
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput)
+            return false;
+        if (mappedFile != null) {
+            // The current row does not fit into a whole window
+            if (position == 0)
+                windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * windowSize);
+            remap();
+            return true;
+        }
+        if (position > 0) {
+            ByteBuffer unread = data.duplicate();
+            unread.position(position).limit(limit);
+            data.clear();
+            data.put(unread);
+            dataOffset += position;
+            limit -= position;
+            position = 0;
+        } else if (limit == data.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(2 * data.capacity());
+            larger.put(data.duplicate().position(0).limit(limit));
+            data = larger;
+        }
+        data.limit(data.capacity()).position(limit);
+        int read = channel.read(data);
+        if (read < 0)
+            endOfInput = true;
+        else
+            limit += read;
+        return true;
+    }
+
+    /**
+     * maps the next window of the file, starting with the current row
+     */
+    private void remap() throws IOException {
+        long start = dataOffset + position;
+        long size = Math.min(windowSize, mappedFile.size() - start);
+        data = mappedFile.map(FileChannel.MapMode.READ_ONLY, start, size);
+        dataOffset = start;
+        position = 0;
+        limit = (int) size;
+        endOfInput = start + size == mappedFile.size();
+    }
+
+    private void skipByteOrderMark() {
+        if (fieldCount > 0 && fieldEnd[0] - fieldStart[0] >= 3 && (data.get(fieldStart[0]) & 0xFF) == 0xEF
+                && (data.get(fieldStart[0] + 1) & 0xFF) == 0xBB && (data.get(fieldStart[0] + 2) & 0xFF) == 0xBF)
+            fieldStart[0] += 3;
+    }
+
+    private int skipWhitespace(int start, int end) {
+        while (start < end && Character.isWhitespace(data.get(start)))
+            start++;
+        return start;
+    }
+
+    private int trimWhitespace(int start, int end) {
+        while (end > start && Character.isWhitespace(data.get(end - 1)))
+            end--;
+        return end;
+    }
+
+    private boolean matches(int start, int end, String lowerCase) {
+        if (end - start != lowerCase.length())
+            return false;
+        for (int i = 0; i < lowerCase.length(); i++)
+            if (Character.toLowerCase(data.get(start + i)) != lowerCase.charAt(i))
+                return false;
+        return true;
+    }
+
+    private int digits(int field, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw invalid(field, "date (yyyy-MM-dd)");
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void check(int field) {
+        if (isEmpty(field))
+            throw new RuntimeException("Missing value in column " + (field + 1) + " of row " + row);
+    }
+
+    private RuntimeException invalid(int field, String expected) {
+        return new RuntimeException("Invalid " + expected + " '" + getString(field) + "' in column " + (field + 1)
+                + " of row " + row);
+    }
+}
@@ -0,0 +1,254 @@
+package main.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * writes rows of ";" separated fields in the layout {@link CsvScanner} and OpenCSV read. Values are encoded straight
+ * into one buffer that is handed to the channel whenever it is full, so writing neither creates strings nor keeps
+ * more than the buffer in memory. Fields containing a separator, a quote or a line break are quoted
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public final class CsvWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Longest encoding of a long, a date or a code point
+    private static final int MAX_VALUE_SIZE = 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[MAX_VALUE_SIZE];
+    private boolean rowStarted;
+    private long rows;
+
+    public CsvWriter(WritableByteChannel channel) {
+        this.channel = Objects.requireNonNull(channel);
+    }
+
+    /**
+     * creates or replaces the file at the given path
+     *
+     * @param path
+     * @param gzip true if the file is compressed with gzip
+     * @return writer
+     * @throws IOException
+     */
+    public static CsvWriter create(Path path, boolean gzip) throws IOException {
+        if (!gzip)
+            return new CsvWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        return new CsvWriter(Channels.newChannel(new GZIPOutputStream(Files.newOutputStream(path), BUFFER_SIZE)));
+    }
+
+    /**
+     * writes the header row, it is not counted as a row
+     *
+     * @param columns
+     */
+    public void header(String... columns) throws IOException {
+        for (String column : columns)
+            field(column);
+        put((byte) '\n');
+        rowStarted = false;
+    }
+
+    public void field(String value) throws IOException {
+        startField();
+        boolean quoted = needsQuotes(value);
+        if (quoted)
+            put((byte) '"');
+        putText(value, quoted);
+        if (quoted)
+            put((byte) '"');
+    }
+
+    /**
+     * writes the values as one field, separated by the delimiter
+     *
+     * @param values
+     * @param delimiter
+     */
+    public void field(Iterable<String> values, String delimiter) throws IOException {
+        startField();
+        boolean quoted = needsQuotes(delimiter);
+        for (String value : values)
+            quoted |= needsQuotes(value);
+        if (quoted)
+            put((byte) '"');
+        boolean first = true;
+        for (String value : values) {
+            if (!first)
+                putText(delimiter, quoted);
+            putText(value, quoted);
+            first = false;
+        }
+        if (quoted)
+            put((byte) '"');
+    }
+
+    /**
+     * writes the first count values as one field, separated by the delimiter
+     *
+     * @param values
+     * @param count
+     * @param delimiter
+     */
+    public void field(long[] values, int count, char delimiter) throws IOException {
+        startField();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                put((byte) delimiter);
+            putLong(values[i]);
+        }
+    }
+
+    public void field(long value) throws IOException {
+        startField();
+        putLong(value);
+    }
+
+    public void field(boolean value) throws IOException {
+        startField();
+        putText(value ? "true" : "false", false);
+    }
+
+    /**
+     * writes the date in the format yyyy-MM-dd
+     *
+     * @param date
+     */
+    public void field(LocalDate date) throws IOException {
+        startField();
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            putLong(year);
+        } else {
+            putDigits(year, 4);
+        }
+        put((byte) '-');
+        putDigits(date.getMonthValue(), 2);
+        put((byte) '-');
+        putDigits(date.getDayOfMonth(), 2);
+    }
+
+    public void endRow() throws IOException {
+        put((byte) '\n');
+        rowStarted = false;
+        rows++;
+    }
+
+    /**
+     * returns the number of rows written behind the header
+     *
+     * @return rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * hands the buffered bytes to the channel and closes it
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void startField() throws IOException {
+        if (rowStarted)
+            put((byte) ';');
+        rowStarted = true;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ';' || c == '"' || c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * encodes the text as UTF-8, doubling quotes inside a quoted field
+     */
+    private void putText(String text, boolean quoted) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (buffer.remaining() < MAX_VALUE_SIZE)
+                flush();
+            if (c < 0x80) {
+                if (c == '"' && quoted)
+                    buffer.put((byte) '"');
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no encoding, like String.getBytes it becomes a question mark
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        if (buffer.remaining() < MAX_VALUE_SIZE)
+            flush();
+        if (value == Long.MIN_VALUE) {
+            putText(Long.toString(value), false);
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+
+    private void putDigits(int value, int width) throws IOException {
+        if (buffer.remaining() < width)
+            flush();
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10)
+            buffer.put((byte) ('0' + value / divisor % 10));
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining())
+            flush();
+        buffer.put(b);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
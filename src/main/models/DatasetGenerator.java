@@ -0,0 +1,334 @@
+package main.models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * writes books.csv, bookcopies.csv and customers.csv of a synthetic library in the layout the CSV imports read.
+ * The same seed always gives the same files. Authors, publishers and the books of the copies follow a Zipf
+ * distribution, so a few are very common and most are rare. Rows are written as they are generated, the memory needed
+ * does not depend on the number of rows.
+ * <p>
+ * The files are consistent without remembering anything between them: the book of a copy is given by its index, and
+ * copy i can only be lent by customer i % customers, as long as i / customers < 5. Whether it is lent is a hash of the
+ * seed and i, so writing the copies and writing the customers come to the same decision
+ *
+ * @author Ahmad Al-Salameh (aa082)
+ *
+ */
+public final class DatasetGenerator {
+    private static final int MAX_LOANS = 5;
+    private static final int MAX_AUTHORS = 3;
+    private static final long MAX_BOOKS = 1_000_000_000L;
+    private static final double ZIPF_EXPONENT = 1.07;
+    private static final long FIRST_ADDED = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final long LAST_ADDED = LocalDate.of(2023, 12, 31).toEpochDay();
+    private static final long FIRST_LENT = LocalDate.of(2023, 1, 1).toEpochDay();
+
+    private static final String[] WORDS = { "Programming", "Java", "Life", "History", "Garden", "Night", "Journey",
+            "Art", "Science", "Data", "Ocean", "City", "Secret", "Winter", "Summer", "Code", "Light", "Mountain",
+            "Music", "War", "Peace", "Machine", "Dream", "River", "Stars", "Kitchen", "Design", "Patterns", "Systems",
+            "Theory", "Forest", "Island", "Empire", "Mind", "Heart", "Shadow", "Fire", "Stone", "Time", "World" };
+    private static final String[] FIRST_NAMES = { "Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta", "Hannah",
+            "Jonas", "Julia", "Karl", "Lena", "Lukas", "Marie", "Max", "Mia", "Noah", "Paul", "Sophie", "Tom", "Jörg",
+            "Zoë", "Ahmad", "Elif", "Mehmet", "Olga", "Piotr", "Sara", "Yusuf", "Lea" };
+    private static final String[] LAST_NAMES = { "Müller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer",
+            "Wagner", "Becker", "Schulz", "Hoffmann", "Koch", "Richter", "Klein", "Wolf", "Neumann", "Schwarz",
+            "Zimmermann", "Braun", "Krüger", "Hofmann", "Hartmann", "Lange", "Werner", "Krause", "Lehmann", "Köhler",
+            "Yilmaz", "Kaya", "Nowak", "Al-Salameh" };
+    private static final String[] CITIES = { "Stuttgart", "Berlin", "Hamburg", "München", "Köln", "Frankfurt",
+            "Leipzig", "Dresden", "Böblingen", "Esslingen", "Ludwigsburg", "Tübingen" };
+    private static final String[] STREETS = { "Hauptstraße", "Schulstraße", "Gartenstraße", "Bahnhofstraße",
+            "Dorfstraße", "Bergstraße", "Universitätsstraße", "Lindenstraße", "Kirchstraße", "Waldweg" };
+    private static final String[] PUBLISHER_NAMES = { "Klett", "Penguin Publishing", "O'Reilly Media", "Springer",
+            "Hanser", "Rheinwerk", "dpunkt", "Cornelsen", "Suhrkamp", "Fischer" };
+
+    private final long seed;
+    private final long books;
+    private final long bookCopies;
+    private final long customers;
+    private final double lentRatio;
+    // Chance that a copy which customer i % customers could lend is lent
+    private final double lendChance;
+    // Multiplying the popularity rank with a number coprime to books spreads the popular books over all of them
+    private final long bookStep;
+
+    /**
+     * creates a generator for the given number of rows
+     *
+     * @param seed
+     * @param books
+     * @param bookCopies
+     * @param customers
+     * @param lentRatio share of the copies that are lent, between 0 and 1
+     * @throws IllegalArgumentException if there are not enough customers to lend that many copies
+     */
+    public DatasetGenerator(long seed, long books, long bookCopies, long customers, double lentRatio) {
+        if (books <= 0 || bookCopies < 0 || customers <= 0)
+            throw new IllegalArgumentException("Books and customers must be positive, copies not negative");
+        if (books > MAX_BOOKS)
+            throw new IllegalArgumentException("At most " + MAX_BOOKS + " books have different ISBNs");
+        if (!(lentRatio >= 0 && lentRatio <= 1))
+            throw new IllegalArgumentException("Lent ratio must be between 0 and 1");
+        long lendable = Math.min(bookCopies, MAX_LOANS * customers);
+        if (lentRatio * bookCopies > lendable)
+            throw new IllegalArgumentException("Not enough customers to lend " + lentRatio * 100 + "% of the copies");
+        this.seed = seed;
+        this.books = books;
+        this.bookCopies = bookCopies;
+        this.customers = customers;
+        this.lentRatio = lentRatio;
+        this.lendChance = lendable == 0 ? 0 : lentRatio * bookCopies / lendable;
+        long step = Math.floorMod(0x9E3779B97F4A7C15L, books);
+        while (gcd(step, books) != 1)
+            step++;
+        this.bookStep = step;
+    }
+
+    /**
+     * writes the three files, each by its own task of the common pool
+     *
+     * @param booksCsv
+     * @param bookCopiesCsv
+     * @param customersCsv
+     * @param gzip true if the files are compressed with gzip
+     * @throws IOException
+     */
+    public void write(Path booksCsv, Path bookCopiesCsv, Path customersCsv, boolean gzip) throws IOException {
+        List<CompletableFuture<Void>> files = new ArrayList<>();
+        files.add(CompletableFuture.runAsync(() -> write(booksCsv, gzip, this::writeBooks)));
+        files.add(CompletableFuture.runAsync(() -> write(bookCopiesCsv, gzip, this::writeBookCopies)));
+        files.add(CompletableFuture.runAsync(() -> write(customersCsv, gzip, this::writeCustomers)));
+        try {
+            CompletableFuture.allOf(files.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io)
+                throw io.getCause();
+            throw e;
+        }
+    }
+
+    public double getLentRatio() {
+        return lentRatio;
+    }
+
+    @FunctionalInterface
+    private interface Rows {
+        void write(CsvWriter writer) throws IOException;
+    }
+
+    private static void write(Path path, boolean gzip, Rows rows) {
+        try (CsvWriter writer = CsvWriter.create(path, gzip)) {
+            rows.write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeBooks(CsvWriter writer) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        // At least as many authors as a book can have, otherwise a small catalog never finds enough different ones
+        Zipf authors = new Zipf(Math.max(MAX_AUTHORS, books / 3), ZIPF_EXPONENT);
+        Zipf publishers = new Zipf(Math.min(books, 2_000), ZIPF_EXPONENT);
+        List<String> bookAuthors = new ArrayList<>(MAX_AUTHORS);
+        StringBuilder title = new StringBuilder();
+        writer.header("isbn", "title", "authors", "year", "city", "publisher", "edition");
+        for (long book = 0; book < books; book++) {
+            title.setLength(0);
+            for (int words = 2 + random.nextInt(4), i = 0; i < words; i++)
+                title.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            bookAuthors.clear();
+            int count = 1 + (random.nextInt(10) < 7 ? 0 : random.nextInt(MAX_AUTHORS));
+            while (bookAuthors.size() < count) {
+                String author = personName(authors.sample(random) - 1);
+                if (!bookAuthors.contains(author))
+                    bookAuthors.add(author);
+            }
+            long publisher = publishers.sample(random) - 1;
+            writer.field(isbn(book));
+            writer.field(title.toString());
+            writer.field(bookAuthors, ", ");
+            writer.field(1900 + random.nextInt(124));
+            writer.field(CITIES[(int) (publisher % CITIES.length)]);
+            writer.field(publisherName(publisher));
+            writer.field(1 + (random.nextInt(4) == 0 ? random.nextInt(9) : 0));
+            writer.endRow();
+        }
+    }
+
+    private void writeBookCopies(CsvWriter writer) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed + 1);
+        Zipf popularity = new Zipf(books, ZIPF_EXPONENT);
+        writer.header("id", "bookIsbn", "shelfLocation", "addedToLibrary", "lent", "lentDate");
+        for (long id = 0; id < bookCopies; id++) {
+            long book = (popularity.sample(random) - 1) * bookStep % books;
+            boolean lent = isLent(id);
+            writer.field(id);
+            writer.field(isbn(book));
+            writer.field(shelfLocation(book));
+            writer.field(LocalDate.ofEpochDay(FIRST_ADDED + random.nextLong(LAST_ADDED - FIRST_ADDED + 1)));
+            writer.field(lent);
+            writer.field(LocalDate.ofEpochDay(FIRST_LENT + random.nextInt(365)));
+            writer.endRow();
+        }
+    }
+
+    private void writeCustomers(CsvWriter writer) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed + 2);
+        long[] loans = new long[MAX_LOANS];
+        writer.header("id", "name", "firstName", "address", "zipCode", "city", "hasOverdraftFees",
+                "hasPaidMonthlyContribution", "bookIds");
+        for (long id = 0; id < customers; id++) {
+            int count = 0;
+            for (long copy = id; copy < bookCopies && count < MAX_LOANS; copy += customers)
+                if (isLent(copy))
+                    loans[count++] = copy;
+            writer.field(id);
+            writer.field(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            writer.field(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            writer.field(STREETS[random.nextInt(STREETS.length)] + " " + (1 + random.nextInt(120)));
+            writer.field(Integer.toString(10_000 + random.nextInt(90_000)));
+            writer.field(CITIES[random.nextInt(CITIES.length)]);
+            writer.field(random.nextInt(10) < 8);
+            writer.field(random.nextInt(10) < 9);
+            writer.field(loans, count, ',');
+            writer.endRow();
+        }
+    }
+
+    /**
+     * decides whether the copy is lent, only the first MAX_LOANS copies of every customer can be
+     */
+    private boolean isLent(long copy) {
+        if (copy / customers >= MAX_LOANS)
+            return false;
+        return (mix(seed ^ mix(copy)) >>> 11) * 0x1.0p-53 < lendChance;
+    }
+
+    /**
+     * returns an ISBN-13 with a valid check digit, different for every book
+     */
+    static String isbn(long book) {
+        long digits = 978_000_000_000L + book;
+        int sum = 0;
+        long rest = digits;
+        for (int position = 12; position > 0; position--, rest /= 10)
+            sum += (int) (rest % 10) * (position % 2 == 0 ? 3 : 1);
+        return Long.toString(digits * 10 + (10 - sum % 10) % 10);
+    }
+
+    private static String shelfLocation(long book) {
+        return (char) ('A' + book % 26) + Long.toString(1 + book / 26 % 99);
+    }
+
+    private static String personName(long index) {
+        String name = FIRST_NAMES[(int) (index % FIRST_NAMES.length)] + " "
+                + LAST_NAMES[(int) (index / FIRST_NAMES.length % LAST_NAMES.length)];
+        long number = index / (FIRST_NAMES.length * LAST_NAMES.length);
+        return number == 0 ? name : name + " " + number;
+    }
+
+    private static String publisherName(long index) {
+        String name = PUBLISHER_NAMES[(int) (index % PUBLISHER_NAMES.length)];
+        long number = index / PUBLISHER_NAMES.length;
+        return number == 0 ? name : name + " " + number;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+
+    /**
+     * draws ranks 1 .. n where rank k has a probability proportional to 1 / k^exponent, by rejection-inversion
+     * (Hörmann and Derflinger), so drawing takes constant time for any n
+     */
+    private static final class Zipf {
+        private final long n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        private Zipf(long n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        private long sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k))
+                    return k;
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x, continued at 0
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, continued at 0
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+
+    /**
+     * writes a dataset: directory, number of copies and optionally the seed, the lent ratio and "gzip". There are a
+     * quarter as many books and a tenth as many customers as copies
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DatasetGenerator <directory> <copies> [seed] [lentRatio] [gzip]");
+            return;
+        }
+        Path directory = Files.createDirectories(Path.of(args[0]));
+        long copies = Long.parseLong(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        double lentRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.2;
+        boolean gzip = args.length > 4 && args[4].equals("gzip");
+        String suffix = gzip ? ".csv.gz" : ".csv";
+        long start = System.nanoTime();
+        long books = Math.max(1, copies / 4);
+        long customers = Math.max(1, copies / 10);
+        DatasetGenerator generator = new DatasetGenerator(seed, books, copies, customers, lentRatio);
+        generator.write(directory.resolve("books" + suffix), directory.resolve("bookcopies" + suffix),
+                directory.resolve("customers" + suffix), gzip);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d rows in %.1f s (%.0f rows/s)%n", books + copies + customers, seconds,
+                (books + copies + customers) / seconds);
+    }
+}
@@ -0,0 +1,332 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.ImportMode;
+import main.library.ImportStatistics;
+import main.library.Library;
+import main.library.Page;
+import main.models.CsvBookReader;
+import main.models.CsvScanner;
+
+public class CsvImportTest {
+    // Large enough that the parallel import splits the copies into several chunks, import speed is measured by
+    // the benchmarks module
+    private static final int BOOKS = 500;
+    private static final int COPIES = 20_000;
+    private static final int CUSTOMERS = 2_000;
+
+    @Test
+    void testStreamingImportMatchesOpenCsv(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+
+        Library openCsv = new Library(Set.of(), Set.of(), Set.of());
+        Library streaming = new Library(Set.of(), Set.of(), Set.of());
+        for (ImportMode mode : List.of(ImportMode.OPENCSV, ImportMode.STREAMING)) {
+            Library library = mode == ImportMode.OPENCSV ? openCsv : streaming;
+            assertEquals(BOOKS, library.csvBook(books, mode).getRows());
+            assertEquals(COPIES, library.csvBookCopy(copies, mode).getRows());
+            assertEquals(CUSTOMERS, library.csvCustomer(customers, mode).getRows());
+        }
+
+        assertEquals(BOOKS, streaming.getBooks().size());
+        assertEquals(COPIES, streaming.getBookCopies().size());
+        assertEquals(CUSTOMERS, streaming.getCustomers().size());
+        assertEquals(describeBooks(openCsv), describeBooks(streaming));
+        assertEquals(describeBookCopies(openCsv), describeBookCopies(streaming));
+        assertEquals(describeCustomers(openCsv), describeCustomers(streaming));
+    }
+
+    @Test
+    void testStreamingImportParsesQuotesAndLineEndings(@TempDir Path dir) throws IOException {
+        // Columns in a different order, quoted separators, escaped quotes, a line break inside a field, CRLF rows,
+        // an empty row, a byte order mark and no line break after the last row
+        Path books = Files.writeString(dir.resolve("books.csv"),
+                "\uFEFFtitle;ISBN;authors;year;city;publisher;edition\r\n"
+                        + "\"Programming; the \"\"Basics\"\"\";200;Kevin Smith, John Doe;1990;London, UK;Klett;1\r\n"
+                        + "\r\n"
+                        + "  \"Two\nLines\";201;Jane Roe; 2001 ;Berlin;Klett;2");
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+
+        assertEquals(2, library.csvBook(books, ImportMode.STREAMING).getRows());
+        Book book = library.getBook("200").orElseThrow();
+        assertEquals("Programming; the \"Basics\"", book.getTitle());
+        assertEquals(Set.of("Kevin Smith", "John Doe"), book.getAuthors());
+        assertEquals("London, UK", book.getCity());
+        assertEquals("Two\nLines", library.getBook("201").orElseThrow().getTitle());
+        assertEquals(2001, library.getBook("201").orElseThrow().getYearValue());
+    }
+
+    @Test
+    void testStreamingImportRejectsInvalidRows(@TempDir Path dir) throws IOException {
+        Path books = Files.writeString(dir.resolve("books.csv"),
+                "isbn;title;authors;year;city;publisher;edition\n" + "200;Programming;Kevin Smith;1990;Bonn;Klett;1\n");
+        Path badDate = Files.writeString(dir.resolve("copies.csv"),
+                "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n" + "10;200;A41;2020-13-01;true;2020-04-01\n");
+        Path missingColumn = Files.writeString(dir.resolve("customers.csv"),
+                "id;name;firstName\n" + "1;Bogner;Justus\n");
+        Path tooManyLoans = Files.writeString(dir.resolve("loans.csv"),
+                "id;name;firstName;address;zipCode;city;hasOverdraftFees;hasPaidMonthlyContribution;bookIds\n"
+                        + "1;Bogner;Justus;Street;70569;Stuttgart;true;true;1,2,3,4,5,6\n");
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+
+        library.csvBook(books, ImportMode.STREAMING);
+        assertThrows(RuntimeException.class, () -> library.csvBook(books, ImportMode.STREAMING));
+        assertThrows(RuntimeException.class, () -> library.csvBookCopy(badDate, ImportMode.STREAMING));
+        assertThrows(RuntimeException.class, () -> library.csvCustomer(missingColumn, ImportMode.STREAMING));
+        assertThrows(RuntimeException.class, () -> library.csvCustomer(tooManyLoans, ImportMode.STREAMING));
+    }
+
+    @Test
+    void testMappedImportMatchesStreamingImport(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+
+        Library streaming = new Library(Set.of(), Set.of(), Set.of());
+        Library mapped = new Library(Set.of(), Set.of(), Set.of());
+        for (ImportMode mode : List.of(ImportMode.STREAMING, ImportMode.MAPPED)) {
+            Library library = mode == ImportMode.STREAMING ? streaming : mapped;
+            library.csvBook(books, mode);
+            library.csvBookCopy(copies, mode);
+            library.csvCustomer(customers, mode);
+        }
+
+        assertEquals(describeBooks(streaming), describeBooks(mapped));
+        assertEquals(describeBookCopies(streaming), describeBookCopies(mapped));
+        assertEquals(describeCustomers(streaming), describeCustomers(mapped));
+    }
+
+    @Test
+    void testMappedScannerMovesWindowOverRows(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        writeCatalog(books, dir.resolve("bookcopies.csv"), dir.resolve("customers.csv"));
+
+        // Windows smaller than a row have to grow, rows cross the end of every window
+        List<String> read = new ArrayList<>();
+        List<String> mapped = new ArrayList<>();
+        try (CsvBookReader reader = new CsvBookReader(CsvScanner.open(books));
+                CsvBookReader mappedReader = new CsvBookReader(CsvScanner.map(books, 16))) {
+            for (Book book = reader.next(); book != null; book = reader.next())
+                read.add(book.getIsbn() + book.getTitle() + book.getEditionValue());
+            for (Book book = mappedReader.next(); book != null; book = mappedReader.next())
+                mapped.add(book.getIsbn() + book.getTitle() + book.getEditionValue());
+        }
+        assertEquals(BOOKS, read.size());
+        assertEquals(read, mapped);
+    }
+
+    @Test
+    void testParallelImportMatchesStreamingImport(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+
+        Library streaming = new Library(Set.of(), Set.of(), Set.of());
+        streaming.csvBook(books, ImportMode.STREAMING);
+        streaming.csvBookCopy(copies, ImportMode.STREAMING);
+        streaming.csvCustomer(customers, ImportMode.STREAMING);
+        Library parallel = new Library(Set.of(), Set.of(), Set.of());
+        ImportStatistics statistics = parallel.csvImport(books, copies, customers);
+
+        assertEquals(BOOKS + COPIES + CUSTOMERS, statistics.getRows());
+        assertEquals(describeBooks(streaming), describeBooks(parallel));
+        assertEquals(describeBookCopies(streaming), describeBookCopies(parallel));
+        assertEquals(describeCustomers(streaming), describeCustomers(parallel));
+    }
+
+    @Test
+    void testParallelImportKeepsShelfOrder(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+        Library streaming = createShelvedLibrary();
+        streaming.csvBook(books, ImportMode.STREAMING);
+        streaming.csvBookCopy(copies, ImportMode.STREAMING);
+        streaming.csvCustomer(customers, ImportMode.STREAMING);
+        // Most copies are new, so they are merged with the copies already on the shelves
+        Library parallel = createShelvedLibrary();
+        parallel.csvImport(books, copies, customers);
+        assertEquals(shelfOrder(streaming), shelfOrder(parallel));
+
+        // A few more copies are put on the shelves one by one
+        Path noBooks = Files.writeString(dir.resolve("no-books.csv"),
+                "isbn;title;authors;year;city;publisher;edition\n");
+        Path moreCopies = Files.writeString(dir.resolve("more-copies.csv"),
+                "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n"
+                        + "30000;978-1;A7;2020-01-01;false;2020-01-01\n"
+                        + "30001;978-2;A07;2020-01-01;false;2020-01-01\n"
+                        + "30002;978-3;0;2020-01-01;false;2020-01-01\n");
+        Path noCustomers = Files.writeString(dir.resolve("no-customers.csv"),
+                "id;name;firstName;address;zipCode;city;hasOverdraftFees;hasPaidMonthlyContribution;bookIds\n");
+        streaming.csvBookCopy(moreCopies, ImportMode.STREAMING);
+        parallel.csvImport(noBooks, moreCopies, noCustomers);
+        assertEquals(shelfOrder(streaming), shelfOrder(parallel));
+        assertEquals(COPIES + 13, shelfOrder(parallel).size());
+    }
+
+    @Test
+    void testParallelImportAddsNothingOnError(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+        // The last customer borrows a copy that the first customer has already lent
+        Files.writeString(customers, "99999;Roe;Jane;Street;12345;Berlin;false;true;0\n", StandardOpenOption.APPEND);
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> library.csvImport(books, copies, customers));
+        assertEquals("Another customer has the book already lent", e.getMessage());
+        assertEquals(0, library.getBooks().size());
+        assertEquals(0, library.getBookCopies().size());
+        assertEquals(0, library.getCustomers().size());
+
+        Path missingBook = Files.writeString(dir.resolve("missing.csv"),
+                "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n"
+                        + "1;unknown;A1;2020-01-01;false;2020-01-01\n");
+        assertThrows(RuntimeException.class, () -> library.csvImport(books, missingBook, customers));
+        assertEquals(0, library.getBooks().size());
+
+        // Copy 1 is imported but not lent, whether or not its chunk is checked before the customer
+        writeCatalog(books, copies, customers);
+        Files.writeString(customers, "99999;Roe;Jane;Street;12345;Berlin;false;true;1\n", StandardOpenOption.APPEND);
+        e = assertThrows(RuntimeException.class, () -> library.csvImport(books, copies, customers));
+        assertEquals("Book couldn't be found or is not lent", e.getMessage());
+        assertEquals(0, library.getBookCopies().size());
+    }
+
+    @Test
+    void testExportCanBeImportedAgain(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        writeCatalog(books, copies, customers);
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+        library.csvImport(books, copies, customers);
+        library.lendBook(1L, 1L);
+
+        Path exportedBooks = dir.resolve("exported-books.csv");
+        Path exportedCopies = dir.resolve("exported-bookcopies.csv");
+        Path exportedCustomers = dir.resolve("exported-customers.csv");
+        library.csvExport(exportedBooks, exportedCopies, exportedCustomers, false);
+        Library imported = new Library(Set.of(), Set.of(), Set.of());
+        imported.csvImport(exportedBooks, exportedCopies, exportedCustomers);
+
+        assertEquals(describeBooks(library), describeBooks(imported));
+        assertEquals(describeBookCopies(library), describeBookCopies(imported));
+        assertEquals(describeCustomers(library), describeCustomers(imported));
+        // OpenCSV reads the exported layout as well
+        Library openCsv = new Library(Set.of(), Set.of(), Set.of());
+        openCsv.csvBook(exportedBooks, ImportMode.OPENCSV);
+        assertEquals(describeBooks(library), describeBooks(openCsv));
+
+        Path compressed = dir.resolve("customers.csv.gz");
+        assertEquals(CUSTOMERS, library.csvExportCustomers(compressed, true));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertArrayEquals(Files.readAllBytes(exportedCustomers), in.readAllBytes());
+        }
+        assertEquals(BOOKS, library.csvExportBooks(dir.resolve("books-only.csv"), false));
+        assertEquals(COPIES, library.csvExportBookCopies(dir.resolve("copies-only.csv"), false));
+    }
+
+    /**
+     * creates a library with a book and ten copies on shelves between those of the catalog
+     */
+    private static Library createShelvedLibrary() {
+        Book book = new Book("1", "Shelved", Set.of("Author"), 2000, "Stuttgart", "Publisher", 1);
+        Set<BookCopy> bookCopies = new HashSet<>();
+        for (long id = 0; id < 10; id++)
+            bookCopies.add(new BookCopy(100_000 + id, "1", "A" + id * 50 + "b", LocalDate.of(2020, 1, 1), false,
+                    LocalDate.of(2020, 1, 1)));
+        return new Library(bookCopies, Set.of(), Set.of(book));
+    }
+
+    private static List<Long> shelfOrder(Library library) {
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+        do {
+            Page<BookCopy> page = library.getBookCopiesByShelfPrefix("", 1_000, token);
+            page.getItems().forEach(bookCopy -> ids.add(bookCopy.getId()));
+            token = page.getNextPageToken();
+        } while (token != null);
+        return ids;
+    }
+
+    private static void writeCatalog(Path books, Path copies, Path customers) throws IOException {
+        StringBuilder rows = new StringBuilder("isbn;title;authors;year;city;publisher;edition\n");
+        for (int i = 0; i < BOOKS; i++)
+            rows.append("978-").append(i).append(";\"Title;").append(i % 50 == 0 ? "\n" : " ").append("Nr. ").append(i)
+                    .append("\";Author ").append(i % 97)
+                    .append(", Ko Autor ").append(i % 13).append(';').append(1900 + i % 120)
+                    .append(";Stuttgart;Publisher ").append(i % 11).append(';').append(1 + i % 5).append('\n');
+        Files.writeString(books, rows);
+
+        rows = new StringBuilder("id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\r\n");
+        for (int i = 0; i < COPIES; i++)
+            rows.append(i).append(";978-").append(i % BOOKS).append(";A").append(i % 500).append(";2020-0")
+                    .append(1 + i % 9).append("-1").append(i % 10).append(';').append(i % 4 == 0).append(";2021-12-")
+                    .append(10 + i % 20).append("\r\n");
+        Files.writeString(copies, rows);
+
+        rows = new StringBuilder(
+                "id;name;firstName;address;zipCode;city;hasOverdraftFees;hasPaidMonthlyContribution;bookIds\n");
+        for (int i = 0; i < CUSTOMERS; i++) {
+            rows.append(i).append(";Müller;Jörg ").append(i).append(";Universitätsstraße ").append(i % 100)
+                    .append(";70569;Stuttgart;").append(i % 3 == 0).append(';').append(i % 2 == 0).append(';');
+            // Every fourth copy is lent, the lent copies are spread over the customers
+            if (i % 2 == 0 && 8 * i + 4 < COPIES)
+                rows.append(8 * i).append(',').append(8 * i + 4);
+            rows.append('\n');
+        }
+        Files.writeString(customers, rows);
+    }
+
+    private static Set<String> describeBooks(Library library) {
+        return library.getBooks().stream()
+                .map(b -> List.of(b.getIsbn(), b.getTitle(), new TreeSet<>(b.getAuthors()), b.getYear(), b.getCity(),
+                        b.getPublisher(), b.getEdition()).toString())
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<String> describeBookCopies(Library library) {
+        return library.getBookCopies().stream().map((BookCopy c) -> List.of(c.getId(), c.getIsbn(),
+                c.getShelfLocation(), c.getAddedToLibrary(), c.isLent(), c.getLentDate()).toString())
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<String> describeCustomers(Library library) {
+        return library.getCustomers().stream()
+                .map((Customer c) -> List.of(c.getId(), c.getName(), c.getFirstName(), c.getAddress(), c.getCity(),
+                        c.getZipCode(), c.hasOverdraftFees(), c.hasPaidMonthlyContribution(),
+                        new TreeSet<>(c.getBookCopiesId())).toString())
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,112 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.ImportMode;
+import main.library.Library;
+import main.library.PublisherStatistics;
+import main.models.DatasetGenerator;
+
+public class DatasetGeneratorTest {
+    private static final int BOOKS = 5_000;
+    private static final int COPIES = 50_000;
+    private static final int CUSTOMERS = 5_000;
+
+    @Test
+    void testSameSeedWritesSameFiles(@TempDir Path dir) throws IOException {
+        DatasetGenerator generator = new DatasetGenerator(7, BOOKS, COPIES, CUSTOMERS, 0.3);
+        generator.write(dir.resolve("a-books.csv"), dir.resolve("a-copies.csv"), dir.resolve("a-customers.csv"), false);
+        generator.write(dir.resolve("b-books.csv"), dir.resolve("b-copies.csv"), dir.resolve("b-customers.csv"), false);
+        for (String file : new String[] { "books.csv", "copies.csv", "customers.csv" })
+            assertArrayEquals(Files.readAllBytes(dir.resolve("a-" + file)),
+                    Files.readAllBytes(dir.resolve("b-" + file)));
+
+        new DatasetGenerator(8, BOOKS, COPIES, CUSTOMERS, 0.3).write(dir.resolve("c-books.csv"),
+                dir.resolve("c-copies.csv"), dir.resolve("c-customers.csv"), false);
+        assertTrue(!Files.readString(dir.resolve("a-books.csv")).equals(Files.readString(dir.resolve("c-books.csv"))));
+    }
+
+    @Test
+    void testGeneratedFilesCanBeImported(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Path copies = dir.resolve("bookcopies.csv");
+        Path customers = dir.resolve("customers.csv");
+        new DatasetGenerator(42, BOOKS, COPIES, CUSTOMERS, 0.3).write(books, copies, customers, false);
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+        library.csvImport(books, copies, customers);
+
+        assertEquals(BOOKS, library.getBooks().size());
+        assertEquals(COPIES, library.getBookCopies().size());
+        assertEquals(CUSTOMERS, library.getCustomers().size());
+        long loans = 0;
+        for (Customer customer : library.getCustomers()) {
+            assertTrue(customer.getBookCopyCount() <= 5);
+            for (Long id : customer.getBookCopiesId())
+                assertTrue(library.getBookCopy(id).map(BookCopy::isLent).orElse(false));
+            loans += customer.getBookCopyCount();
+        }
+        // Every lent copy belongs to exactly one customer
+        assertEquals(library.getLentBookCopyCount(), loans);
+        double ratio = (double) library.getLentBookCopyCount() / COPIES;
+        assertTrue(ratio > 0.28 && ratio < 0.32, "lent ratio " + ratio);
+        // The most common publisher has far more copies than an even share
+        PublisherStatistics top = library.getPublisherStatistics().get(0);
+        assertTrue(top.getPercentage() > 5 * 100.0 / library.getPublisherStatistics().size());
+    }
+
+    @Test
+    @Timeout(10)
+    void testTinyCatalogs(@TempDir Path dir) throws IOException {
+        // Fewer books than authors a single book can have
+        for (int books = 1; books <= 10; books++) {
+            Path booksCsv = dir.resolve(books + "-books.csv");
+            Path copiesCsv = dir.resolve(books + "-copies.csv");
+            Path customersCsv = dir.resolve(books + "-customers.csv");
+            new DatasetGenerator(1, books, 10, 5, 0.2).write(booksCsv, copiesCsv, customersCsv, false);
+            Library library = new Library(Set.of(), Set.of(), Set.of());
+            library.csvImport(booksCsv, copiesCsv, customersCsv);
+            assertEquals(books, library.getBooks().size());
+            assertEquals(10, library.getBookCopies().size());
+        }
+    }
+
+    @Test
+    void testCompressedFilesCanBeImported(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv.gz");
+        Path copies = dir.resolve("bookcopies.csv.gz");
+        Path customers = dir.resolve("customers.csv.gz");
+        new DatasetGenerator(3, 200, 2_000, 200, 0.3).write(books, copies, customers, true);
+        Library library = new Library(Set.of(), Set.of(), Set.of());
+        library.csvImport(books, copies, customers);
+        assertEquals(2_000, library.getBookCopies().size());
+
+        for (ImportMode mode : ImportMode.values()) {
+            Library single = new Library(Set.of(), Set.of(), Set.of());
+            single.csvBook(books, mode);
+            single.csvBookCopy(copies, mode);
+            single.csvCustomer(customers, mode);
+            assertEquals(library.getLentBookCopyCount(), single.getLentBookCopyCount(), mode.toString());
+            assertEquals(200, single.getCustomers().size(), mode.toString());
+        }
+    }
+
+    @Test
+    void testRejectsTooFewCustomers() {
+        assertThrows(IllegalArgumentException.class, () -> new DatasetGenerator(1, BOOKS, COPIES, 1_000, 0.2));
+        assertThrows(IllegalArgumentException.class, () -> new DatasetGenerator(1, BOOKS, COPIES, CUSTOMERS, 1.5));
+    }
+}
@@ -0,0 +1,292 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static test.TestLibraries.createLibrary;
+import static test.TestLibraries.describe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Library;
+
+public class JournalTest {
+
+    @Test
+    void testJournalReplaysChangesAfterRestart(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBook(1L, 150L);
+        library.lendBook(2L, 151L);
+        library.returnBook(1L, 150L);
+        library.returnBook(0L, 0L);
+        library.deleteBookCopy(199L);
+        library.deleteCustomer(39L);
+        library.returnBook(19L, 19L);
+        library.deleteBook("isbn19");
+        assertThrows(RuntimeException.class, () -> library.lendBook(2L, 151L));
+        library.closeJournal();
+
+        Library restarted = createLibrary(20, 200, 40, 1);
+        restarted.openJournal(journal);
+
+        assertEquals(describe(library), describe(restarted));
+        assertTrue(restarted.getBookCopy(151L).orElseThrow().isLent());
+        assertTrue(restarted.getBook("isbn19").isEmpty());
+        // The restarted library records its own changes behind the replayed ones
+        restarted.returnBook(2L, 151L);
+        restarted.closeJournal();
+        Library again = createLibrary(20, 200, 40, 1);
+        again.openJournal(journal);
+        assertEquals(describe(restarted), describe(again));
+        again.closeJournal();
+    }
+
+    @Test
+    void testJournalReplaysBatches(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBooks(39L, List.of(150L, 151L, 152L));
+        library.returnBooks(Map.of(0L, 0L, 1L, 1L, 151L, 39L));
+        assertThrows(RuntimeException.class, () -> library.returnBooks(Map.of(2L, 2L, 3L, 2L)));
+        library.closeJournal();
+
+        Library restarted = createLibrary(20, 200, 40, 1);
+        restarted.openJournal(journal);
+        assertEquals(describe(library), describe(restarted));
+        assertEquals(Set.of(150L, 152L), restarted.getCustomer(39L).orElseThrow().getBookCopiesId());
+        assertTrue(restarted.getBookCopy(3L).orElseThrow().isLent());
+        restarted.closeJournal();
+    }
+
+    @Test
+    void testOnlyJournalLimitsBatchReturns(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(100, 10_000, 5_000, 1);
+        Map<Long, Long> returns = new HashMap<>();
+        for (long id = 0; id < 4_999; id++)
+            returns.put(id, id);
+        library.openJournal(journal);
+        assertThrows(RuntimeException.class, () -> library.returnBooks(returns));
+        assertEquals(4_999, library.getLentBookCopyCount());
+        library.closeJournal();
+
+        library.returnBooks(returns);
+        assertEquals(0, library.getLentBookCopyCount());
+    }
+
+    @Test
+    void testJournalReplaysOnlyChangesAfterSnapshot(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Path snapshot = dir.resolve("library.snapshot");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBook(1L, 150L);
+        library.saveSnapshot(snapshot);
+        library.lendBook(2L, 151L);
+        library.returnBook(0L, 0L);
+        library.closeJournal();
+
+        // Lending copy 150 again would fail, so the replay has to skip the records contained in the snapshot
+        Library loaded = Library.loadSnapshot(snapshot);
+        loaded.openJournal(journal);
+
+        assertEquals(describe(library), describe(loaded));
+        assertThrows(RuntimeException.class, () -> loaded.openJournal(journal));
+        loaded.closeJournal();
+    }
+
+    @Test
+    void testSnapshotDropsRecordsFromJournal(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Path first = dir.resolve("first.snapshot");
+        Path second = dir.resolve("second.snapshot");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.saveSnapshot(first);
+        library.openJournal(journal);
+        for (long id = 150; id < 190; id++)
+            library.lendBook(id % 38, id);
+        long full = Files.size(journal);
+        library.saveSnapshot(second);
+        assertTrue(Files.size(journal) < full);
+        library.returnBook(36L, 150L);
+        library.deleteCustomer(39L);
+        library.closeJournal();
+
+        // Only the changes after the second snapshot are left in the journal
+        Library loaded = Library.loadSnapshot(second);
+        loaded.openJournal(journal);
+        assertEquals(describe(library), describe(loaded));
+        loaded.closeJournal();
+        assertEquals("Journal starts after the snapshot of the library", assertThrows(RuntimeException.class,
+                () -> Library.loadSnapshot(first).openJournal(journal)).getMessage());
+    }
+
+    @Test
+    void testJournalCutsOffTornRecord(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBook(1L, 150L);
+        library.closeJournal();
+        long complete = Files.size(journal);
+        library.openJournal(journal);
+        library.lendBook(2L, 151L);
+        library.closeJournal();
+        // A crash while the second record was written leaves only part of it
+        byte[] bytes = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length - 5));
+
+        Library restarted = createLibrary(20, 200, 40, 1);
+        restarted.openJournal(journal);
+
+        assertTrue(restarted.getBookCopy(150L).orElseThrow().isLent());
+        assertFalse(restarted.getBookCopy(151L).orElseThrow().isLent());
+        assertEquals(complete, Files.size(journal));
+        restarted.lendBook(3L, 152L);
+        restarted.closeJournal();
+
+        Library again = createLibrary(20, 200, 40, 1);
+        again.openJournal(journal);
+        assertEquals(describe(restarted), describe(again));
+        again.closeJournal();
+
+        Files.write(journal, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, StandardOpenOption.TRUNCATE_EXISTING);
+        Library small = createLibrary(1, 1, 1, 1);
+        assertEquals("File is not a library journal",
+                assertThrows(RuntimeException.class, () -> small.openJournal(journal)).getMessage());
+    }
+
+    @Test
+    void testConcurrentDesksShareJournal(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("library.journal");
+        int desks = 8;
+        int rounds = 250;
+        Library library = createLibrary(100, 10_000, 1_000, 1);
+        library.openJournal(journal);
+        ExecutorService executor = Executors.newFixedThreadPool(desks);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int desk = 0; desk < desks; desk++) {
+                long customerId = desk;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < rounds; i++) {
+                        long bookId = 5_000L + customerId * rounds + i;
+                        library.lendBook(customerId, bookId);
+                        if (i % 2 == 0)
+                            library.returnBook(customerId, bookId);
+                        else if (i > 1)
+                            library.returnBook(customerId, bookId - 2);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        library.closeJournal();
+
+        Library restarted = createLibrary(100, 10_000, 1_000, 1);
+        restarted.openJournal(journal);
+        assertEquals(describe(library), describe(restarted));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void testFailedJournalLeavesLibraryUnchanged(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBook(1L, 150L);
+        List<Set<String>> before = describe(library);
+        long lent = library.getLentBookCopyCount();
+        breakJournal(library);
+
+        assertThrows(UncheckedIOException.class, () -> library.lendBook(2L, 151L));
+        assertFalse(library.getBookCopy(151L).orElseThrow().isLent());
+        assertEquals(Set.of(2L), library.getCustomer(2L).orElseThrow().getBookCopiesId());
+        assertEquals(lent, library.getLentBookCopyCount());
+        // Every later change fails as well, also those that don't share a batch with the failed one
+        assertThrows(UncheckedIOException.class, () -> library.returnBook(1L, 150L));
+        assertThrows(UncheckedIOException.class, () -> library.lendBooks(39L, List.of(152L, 153L)));
+        assertThrows(UncheckedIOException.class, () -> library.returnBooks(Map.of(0L, 0L)));
+        assertThrows(UncheckedIOException.class, () -> library.deleteCustomer(39L));
+        assertThrows(UncheckedIOException.class, () -> library.deleteBookCopy(199L));
+        assertEquals(before, describe(library));
+        assertThrows(UncheckedIOException.class, () -> library.closeJournal());
+
+        // Only what reached the disk is replayed
+        Library restarted = createLibrary(20, 200, 40, 1);
+        restarted.openJournal(journal);
+        assertEquals(before, describe(restarted));
+        restarted.closeJournal();
+    }
+
+    @Test
+    void testJournalNotMatchingLibraryIsNotApplied(@TempDir Path dir) throws IOException {
+        Path journal = dir.resolve("library.journal");
+        Library library = createLibrary(20, 200, 40, 1);
+        library.openJournal(journal);
+        library.lendBook(1L, 150L);
+        library.deleteCustomer(39L);
+        library.lendBook(2L, 151L);
+        library.closeJournal();
+
+        // The first two records fit, the third does not, because copy 151 is already lent
+        Library other = createLibrary(20, 200, 40, 1);
+        other.lendBook(5L, 151L);
+        List<Set<String>> before = describe(other);
+        assertEquals("Journal does not match the library",
+                assertThrows(RuntimeException.class, () -> other.openJournal(journal)).getMessage());
+        assertEquals(before, describe(other));
+        assertFalse(other.getBookCopy(150L).orElseThrow().isLent());
+
+        // A customer can't have more copies in the replay than while lending
+        Library full = createLibrary(20, 200, 40, 1);
+        full.lendBooks(1L, List.of(160L, 161L, 162L, 163L));
+        before = describe(full);
+        assertThrows(RuntimeException.class, () -> full.openJournal(journal));
+        assertEquals(before, describe(full));
+
+        // The journal was not kept open by the failed attempts
+        other.returnBook(5L, 151L);
+        other.openJournal(journal);
+        assertEquals(describe(library), describe(other));
+        other.closeJournal();
+    }
+
+    /**
+     * closes the file of the open journal of the library, so writing it fails like a broken disk
+     */
+    private static void breakJournal(Library library) throws ReflectiveOperationException, IOException {
+        Field journalField = Library.class.getDeclaredField("journal");
+        journalField.setAccessible(true);
+        Object journal = journalField.get(library);
+        Field channelField = journal.getClass().getDeclaredField("channel");
+        channelField.setAccessible(true);
+        ((FileChannel) channelField.get(journal)).close();
+    }
+}
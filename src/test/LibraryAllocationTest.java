@@ -0,0 +1,64 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.Library;
+
+public class LibraryAllocationTest {
+    private static final int WARMUP = 200_000;
+    private static final int MEASURED = 1_000_000;
+    // Bytes allowed for all measured operations together, room for reading the allocation counter itself
+    private static final long BUDGET = 4_096;
+
+    @Test
+    void testLendAndReturnDoNotAllocate() {
+        long allocated = measureAllocation(false);
+        assertTrue(allocated <= BUDGET, () -> allocated + " bytes allocated");
+    }
+
+    @Test
+    void testLendAndReturnWithMetricsDoNotAllocate() {
+        long allocated = measureAllocation(true);
+        assertTrue(allocated <= BUDGET, () -> allocated + " bytes allocated");
+    }
+
+    /**
+     * returns the bytes allocated by all measured operations together, a single byte per operation would exceed the
+     * budget
+     */
+    private static long measureAllocation(boolean metrics) {
+        Book book = new Book("100", "The Life", Set.of(), 2011, "Stuttgart", "Klett", 12);
+        BookCopy bookCopy = new BookCopy(1000L, "100", "2a", LocalDate.now(), false, LocalDate.now());
+        Customer customer = new Customer(1000L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of());
+        Library library = new Library(Set.of(bookCopy), Set.of(customer), Set.of(book));
+        library.getMetrics().setEnabled(metrics);
+        // Boxed once up front, like ids coming from a request that are reused for the whole benchmark
+        Long customerId = 1000L;
+        Long bookId = 1000L;
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        lendAndReturn(library, customerId, bookId, WARMUP);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        lendAndReturn(library, customerId, bookId, MEASURED);
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static void lendAndReturn(Library library, Long customerId, Long bookId, int times) {
+        for (int i = 0; i < times; i++) {
+            library.lendBook(customerId, bookId);
+            library.returnBook(customerId, bookId);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.Library;
+import main.logic.Logic;
+
+public class LibraryConcurrencyTest {
+    private static final int CUSTOMERS = 50;
+    private static final int COPIES = 200;
+    private static final int DESKS = 8;
+    private static final int OPERATIONS_PER_DESK = 20_000;
+
+    @Test
+    void testParallelDesksKeepLibraryConsistent(@TempDir Path dir) throws Exception {
+        Set<Book> books = new HashSet<>();
+        Set<BookCopy> copies = new HashSet<>();
+        Set<Customer> customers = new HashSet<>();
+        for (int i = 0; i < 10; i++)
+            books.add(new Book("isbn" + i, "Title " + i, Set.of("Author " + i), 2000, "Stuttgart", "Klett", 1));
+        for (long id = 0; id < COPIES; id++)
+            copies.add(new BookCopy(id, "isbn" + id % 10, "A" + id, LocalDate.now(), false, LocalDate.now()));
+        for (long id = 0; id < CUSTOMERS; id++)
+            customers.add(new Customer(id, "Name", "First", "Street", "City", "70563", true, true, Set.of()));
+        Library library = new Library(copies, customers, books);
+
+        AtomicLong lent = new AtomicLong();
+        AtomicLong returned = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(DESKS + 2);
+        try {
+            List<Future<?>> desks = new ArrayList<>();
+            for (int desk = 0; desk < DESKS; desk++) {
+                desks.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_DESK; i++) {
+                        Long customerId = (long) random.nextInt(CUSTOMERS);
+                        Long copyId = (long) random.nextInt(COPIES);
+                        try {
+                            switch (random.nextInt(4)) {
+                            case 0 -> {
+                                library.lendBook(customerId, copyId);
+                                lent.incrementAndGet();
+                            }
+                            case 1 -> {
+                                library.returnBook(customerId, copyId);
+                                returned.incrementAndGet();
+                            }
+                            case 2 -> {
+                                // Batches lock several stripes at once next to the single lends and returns
+                                Long otherCopyId = (copyId + 1 + random.nextInt(COPIES - 1)) % COPIES;
+                                library.lendBooks(customerId, List.of(copyId, otherCopyId));
+                                lent.addAndGet(2);
+                            }
+                            default -> {
+                                // The loans of two customers, another desk may return one of them first
+                                Map<Long, Long> loans = new HashMap<>();
+                                for (Long borrower : List.of(customerId, (customerId + 1) % CUSTOMERS))
+                                    library.getCustomer(borrower).orElseThrow().getBookCopiesId()
+                                            .forEach(loan -> loans.put(loan, borrower));
+                                library.returnBooks(loans);
+                                returned.addAndGet(loans.size());
+                            }
+                            }
+                        } catch (RuntimeException e) {
+                            // Rejected because of the current state, e.g. the copy is already lent
+                        }
+                    }
+                }));
+            }
+            // A batch importer and a searching desk run next to the circulation desks
+            Future<?> importer = pool.submit(() -> {
+                for (int batch = 0; batch < 20; batch++)
+                    importBatch(library, dir, batch);
+                return null;
+            });
+            Future<?> search = pool.submit(() -> {
+                for (int i = 0; i < 2_000; i++)
+                    assertEquals(COPIES / 10, Logic.searchViaISBN("isbn" + i % 10, library).size());
+            });
+            for (Future<?> desk : desks)
+                desk.get();
+            importer.get();
+            search.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        // Every loan belongs to exactly one customer and refers to a lent copy, every lent copy has a borrower
+        Map<Long, Long> borrowers = new HashMap<>();
+        for (Customer customer : library.getCustomers()) {
+            for (Long copyId : customer.getBookCopiesId()) {
+                assertEquals(null, borrowers.put(copyId, customer.getId()));
+                assertTrue(library.getBookCopy(copyId).orElseThrow().isLent());
+            }
+        }
+        long lentCopies = library.getBookCopies().stream().filter(BookCopy::isLent).count();
+        assertEquals(lentCopies, borrowers.size());
+        assertEquals(lent.get() - returned.get(), lentCopies);
+        assertEquals(COPIES + 20 * 10, library.getBookCopies().size());
+        // The lent index counted every loan and return of the desks
+        assertEquals(lentCopies, library.getLentBookCopyCount());
+        assertEquals(COPIES + 20 * 10 - lentCopies, library.getAvailableBookCopyCount());
+        assertEquals(library.getBookCopies().stream().filter(BookCopy::isLent).collect(Collectors.toSet()),
+                new HashSet<>(library.getLentBookCopies()));
+        assertEquals(lentCopies, library.countBookCopiesLentBefore(LocalDate.now().plusDays(1)));
+        assertEquals(lentCopies, library.getBookCopiesLentBefore(LocalDate.now().plusDays(1)).size());
+    }
+
+    private static void importBatch(Library library, Path dir, int batch) throws IOException {
+        Path books = dir.resolve("books" + batch + ".csv");
+        Path copies = dir.resolve("copies" + batch + ".csv");
+        Files.writeString(books, "isbn;title;authors;year;city;publisher;edition\n" + "import" + batch
+                + ";Imported;Someone;2001;Berlin;Penguin Publishing;1\n");
+        StringBuilder rows = new StringBuilder("id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n");
+        for (int i = 0; i < 10; i++)
+            rows.append(100_000 + batch * 10 + i).append(";import").append(batch)
+                    .append(";B1;2020-01-01;false;2020-01-01\n");
+        Files.writeString(copies, rows);
+        library.csvBook(books);
+        library.csvBookCopy(copies);
+    }
+}
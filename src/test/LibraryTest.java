@@ -1,21 +1,35 @@
 package test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import main.app.UserInterface;
 import main.library.Book;
 import main.library.BookCopy;
 import main.library.Customer;
 import main.library.Library;
+import main.library.Page;
+import main.logic.Logic;
 
 public class LibraryTest {
     Library library;
@@ -29,18 +43,27 @@ public class LibraryTest {
         // bookCopies
         Book book = new Book("100", "The Life", Set.of(), 2011, "Stuttgart", "Klett", 12);
         Book book2 = new Book("101", "The Life2", Set.of(), 2011, "Stuttgart", "Penguin Publishing", 12);
+        library = new Library(createBookCopies(), createCustomers(), Set.of(book, book2));
+        ui = new UserInterface(library);
+
+    }
+
+    /**
+     * creates the copies of the library of every test, copy 1 is lent by customer 123
+     */
+    private static Set<BookCopy> createBookCopies() {
         BookCopy bookCopy1 = new BookCopy(0L, "100", "2a", LocalDate.now(), false, LocalDate.now());
         BookCopy bookCopy2 = new BookCopy(1L, "100", "3a", LocalDate.now(), true, LocalDate.now());
         BookCopy bookCopy3 = new BookCopy(2L, "101", "3a", LocalDate.now(), false, LocalDate.now());
+        return Set.of(bookCopy1, bookCopy2, bookCopy3);
+    }
+
+    private static Set<Customer> createCustomers() {
         Customer c1 = new Customer(123L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true, Set.of(1L));
         Customer c2 = new Customer(1234L, "Alex", "Hase", "Böblingen", "HauptStrasse", "70563", true, true, Set.of());
         Customer c3 = new Customer(12345L, "Alex", "Hase", "Böblingen", "HauptStrasse", "70563", false, false,
                 Set.of());
-        Set<BookCopy> bookCopies = new HashSet<BookCopy>();
-        Set<Customer> customers = new HashSet<Customer>();
-        library = new Library(Set.of(bookCopy1, bookCopy2, bookCopy3), Set.of(c1, c2, c3), Set.of(book, book2));
-        ui = new UserInterface(library);
-
+        return Set.of(c1, c2, c3);
     }
 
     @Test
@@ -68,11 +91,197 @@ public class LibraryTest {
         assertThrows(RuntimeException.class, () -> library.deleteCustomer(1234L));
     }
 
+    @Test
+    void testReadViews() {
+        Set<BookCopy> copies = library.getBookCopies();
+        assertSame(copies, library.getBookCopies());
+        BookCopy copy = library.getBookCopy(0L).orElseThrow();
+        assertTrue(copies.contains(copy));
+        assertThrows(UnsupportedOperationException.class, () -> copies.remove(copy));
+        library.deleteBookCopy(0L);
+        assertFalse(copies.contains(copy));
+        assertEquals(2, copies.size());
+    }
+
+    @Test
+    void testSearchViaISBN() {
+        assertEquals(Set.of(0L, 1L), ids(Logic.searchViaISBN("100", library)));
+        library.deleteBookCopy(0L);
+        assertEquals(Set.of(1L), ids(Logic.searchViaISBN("100", library)));
+        library.deleteBook("101");
+        assertThrows(RuntimeException.class, () -> Logic.searchViaISBN("101", library));
+    }
+
+    @Test
+    void testSearchViaAuthor() {
+        library = new Library(createBookCopies(), createCustomers(),
+                Set.of(new Book("100", "The Life", Set.of("Jürgen Müller", "Kevin Smith"), 2011, "Stuttgart", "Klett", 12),
+                        new Book("101", "The Life2", Set.of("Kevin Smith"), 2011, "Stuttgart", "Penguin Publishing", 12)));
+        assertEquals(Set.of(0L, 1L, 2L), ids(Logic.searchViaAuthor("Kevin Smith", library)));
+        assertEquals(Set.of(0L, 1L), ids(Logic.searchViaAuthor("  jurgen MULLER ", library)));
+        assertThrows(RuntimeException.class, () -> Logic.searchViaAuthor("John Doe", library));
+        library.deleteBook("101");
+        assertEquals(Set.of(0L, 1L), ids(Logic.searchViaAuthor("Kevin Smith", library)));
+    }
+
+    @Test
+    void testSearchViaAuthorPageByPage() {
+        library = new Library(createBookCopies(), createCustomers(),
+                Set.of(new Book("100", "The Life", Set.of("Kevin Smith"), 2011, "Stuttgart", "Klett", 12),
+                        new Book("101", "The Life2", Set.of("Kevin Smith"), 2011, "Stuttgart", "Penguin", 12)));
+        Page<BookCopy> first = Logic.searchViaAuthor("Kevin Smith", 2, null, library);
+        assertEquals(List.of(0L, 1L), first.getItems().stream().map(BookCopy::getId).toList());
+        Page<BookCopy> second = Logic.searchViaAuthor("Kevin Smith", 2, first.getNextPageToken(), library);
+        assertEquals(List.of(2L), second.getItems().stream().map(BookCopy::getId).toList());
+        assertFalse(second.hasNextPage());
+        assertThrows(IllegalArgumentException.class, () -> Logic.searchViaAuthor("Kevin Smith", 2, "100", library));
+        assertThrows(RuntimeException.class, () -> Logic.searchViaAuthor("John Doe", 2, null, library));
+    }
+
+    @Test
+    void testSearchViaTitle() {
+        Book book3 = new Book("102", "Thé Lifeguard Handbook", Set.of(), 2011, "Stuttgart", "Klett", 1);
+        library = new Library(createBookCopies(), createCustomers(),
+                Set.of(library.getBook("100").orElseThrow(), library.getBook("101").orElseThrow(), book3));
+        assertEquals(List.of("100", "101", "102"), isbns(Logic.searchBooksViaTitle("the li", 10, library)));
+        assertEquals(List.of("101"), isbns(Logic.searchBooksViaTitle("THE LIFE2", 10, library)));
+        assertEquals(List.of("102"), isbns(Logic.searchBooksViaTitle("handbook the", 10, library)));
+        assertEquals(List.of("100", "101"), isbns(Logic.searchBooksViaTitle("life", 2, library)));
+        assertEquals(Set.of(0L, 1L, 2L), ids(Logic.searchViaTitle("the life", library)));
+        assertThrows(RuntimeException.class, () -> Logic.searchViaTitle("handbook", library));
+        assertThrows(RuntimeException.class, () -> Logic.searchViaTitle("death", library));
+        library.deleteBook("101");
+        assertEquals(List.of("100", "102"), isbns(Logic.searchBooksViaTitle("the", 10, library)));
+    }
+
+    private static List<String> isbns(List<Book> books) {
+        return books.stream().map(Book::getIsbn).toList();
+    }
+
+    private static Set<Long> ids(Set<BookCopy> copies) {
+        return copies.stream().map(BookCopy::getId).collect(Collectors.toSet());
+    }
+
+    @Test
+    void testLibrariesDoNotShareCopiesAndCustomers() {
+        Set<BookCopy> bookCopies = createBookCopies();
+        Set<Customer> customers = createCustomers();
+        Library first = new Library(bookCopies, customers, library.getBooks());
+        Library second = new Library(bookCopies, customers, library.getBooks());
+        first.lendBook(1234L, 0L);
+        second.returnBook(123L, 1L);
+
+        assertTrue(first.getBookCopy(0L).orElseThrow().isLent());
+        assertFalse(second.getBookCopy(0L).orElseThrow().isLent());
+        assertTrue(first.getBookCopy(1L).orElseThrow().isLent());
+        assertEquals(Set.of(1L), first.getCustomer(123L).orElseThrow().getBookCopiesId());
+        assertTrue(second.getCustomer(123L).orElseThrow().getBookCopiesId().isEmpty());
+        assertEquals(2, first.getLentBookCopyCount());
+        assertEquals(0, second.getLentBookCopyCount());
+        // The given copies and customers are not changed either
+        assertEquals(List.of(1L), bookCopies.stream().filter(BookCopy::isLent).map(BookCopy::getId).toList());
+        for (Customer customer : customers)
+            assertEquals(customer.getId() == 123L ? Set.of(1L) : Set.of(), customer.getBookCopiesId());
+        // A library created from the views of another one is independent of it as well
+        Library third = new Library(first.getBookCopies(), first.getCustomers(), first.getBooks());
+        third.returnBook(1234L, 0L);
+        assertTrue(first.getBookCopy(0L).orElseThrow().isLent());
+        assertEquals(Set.of(0L), first.getCustomer(1234L).orElseThrow().getBookCopiesId());
+    }
+
+    @Test
+    void testLendAndReturnBook() {
+        library.lendBook(1234L, 0L);
+        assertTrue(library.getBookCopy(0L).orElseThrow().isLent());
+        assertEquals(Set.of(0L), library.getCustomer(1234L).orElseThrow().getBookCopiesId());
+        assertThrows(RuntimeException.class, () -> library.lendBook(123L, 0L));
+        assertThrows(RuntimeException.class, () -> library.returnBook(123L, 0L));
+        library.returnBook(1234L, 0L);
+        assertFalse(library.getBookCopy(0L).orElseThrow().isLent());
+        assertTrue(library.getCustomer(1234L).orElseThrow().getBookCopiesId().isEmpty());
+        assertThrows(RuntimeException.class, () -> library.lendBook(99L, 0L));
+    }
+
+    @Test
+    void testLendLimit() {
+        Set<BookCopy> copies = new HashSet<>();
+        for (long id = 10; id < 10 + Customer.MAX_BOOK_COPIES + 1; id++)
+            copies.add(new BookCopy(id, "100", "4a", LocalDate.now(), false, LocalDate.now()));
+        library = new Library(copies, createCustomers(), library.getBooks());
+        for (long id = 10; id < 10 + Customer.MAX_BOOK_COPIES; id++)
+            library.lendBook(1234L, id);
+        assertThrows(RuntimeException.class, () -> library.lendBook(1234L, 15L));
+        assertFalse(library.getBookCopy(15L).orElseThrow().isLent());
+        assertEquals(Customer.MAX_BOOK_COPIES, library.getCustomer(1234L).orElseThrow().getBookCopyCount());
+    }
+
+    @Test
+    void testLendBooksAndReturnBooks() {
+        library.lendBooks(1234L, List.of(0L, 2L));
+        assertTrue(library.getBookCopy(0L).orElseThrow().isLent());
+        assertTrue(library.getBookCopy(2L).orElseThrow().isLent());
+        assertEquals(Set.of(0L, 2L), library.getCustomer(1234L).orElseThrow().getBookCopiesId());
+
+        // Copy 1 belongs to customer 123, not 1234, so none of the three copies is returned
+        assertThrows(RuntimeException.class, () -> library.returnBooks(Map.of(0L, 1234L, 1L, 1234L, 2L, 1234L)));
+        assertEquals(3, library.getLentBookCopyCount());
+        library.returnBooks(Map.of(0L, 1234L, 1L, 123L, 2L, 1234L));
+        assertEquals(0, library.getLentBookCopyCount());
+        assertTrue(library.getCustomer(1234L).orElseThrow().getBookCopiesId().isEmpty());
+        assertTrue(library.getCustomer(123L).orElseThrow().getBookCopiesId().isEmpty());
+    }
+
+    @Test
+    void testLendBooksIsAllOrNothing() {
+        library.returnBook(123L, 1L);
+        library.lendBook(1234L, 1L);
+        // Copy 1 is lent already, copy 0 must stay available
+        assertThrows(RuntimeException.class, () -> library.lendBooks(123L, List.of(0L, 1L)));
+        assertFalse(library.getBookCopy(0L).orElseThrow().isLent());
+        assertTrue(library.getCustomer(123L).orElseThrow().getBookCopiesId().isEmpty());
+        assertThrows(RuntimeException.class, () -> library.lendBooks(123L, List.of(0L, 0L)));
+        assertThrows(RuntimeException.class, () -> library.lendBooks(99L, List.of(0L)));
+        assertThrows(RuntimeException.class, () -> library.lendBooks(123L, List.of(0L, 7L)));
+        assertEquals(1, library.getLentBookCopyCount());
+
+        Set<BookCopy> copies = new HashSet<>(library.getBookCopies());
+        for (long id = 10; id < 10 + Customer.MAX_BOOK_COPIES; id++)
+            copies.add(new BookCopy(id, "100", "4a", LocalDate.now(), false, LocalDate.now()));
+        library = new Library(copies, library.getCustomers(), library.getBooks());
+        // Customer 1234 has one copy, five more would exceed the limit
+        assertThrows(RuntimeException.class, () -> library.lendBooks(1234L, List.of(10L, 11L, 12L, 13L, 14L)));
+        assertEquals(1, library.getCustomer(1234L).orElseThrow().getBookCopyCount());
+        library.lendBooks(1234L, List.of(10L, 11L, 12L, 13L));
+        assertEquals(Customer.MAX_BOOK_COPIES, library.getCustomer(1234L).orElseThrow().getBookCopyCount());
+    }
+
+    @Test
+    void testCsvImport(@TempDir Path dir) throws IOException {
+        Path books = Files.writeString(dir.resolve("books.csv"), "isbn;title;authors;year;city;publisher;edition\n"
+                + "200;Programming;Kevin Smith, John Doe;1990;London, UK;Penguin Publishing;1\n");
+        Path copies = Files.writeString(dir.resolve("bookcopies.csv"),
+                "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n" + "10;200;A41;2020-01-01;true;2020-04-01\n"
+                        + "11;200;A42;2020-01-01;false;2020-02-01\n");
+        Path customers = Files.writeString(dir.resolve("customers.csv"),
+                "id;name;firstName;address;zipCode;city;hasOverdraftFees;hasPaidMonthlyContribution;bookIds\n"
+                        + "1;Bogner;Justus;Universitätsstraße 38;70569;Stuttgart;true;true;10\n");
+        Path duplicateLoan = Files.writeString(dir.resolve("duplicate.csv"),
+                "id;name;firstName;address;zipCode;city;hasOverdraftFees;hasPaidMonthlyContribution;bookIds\n"
+                        + "2;Mustermann;Otto;Musterstraße 1;12345;Musterstadt;false;true;10\n");
+
+        assertEquals(1, library.csvBook(books).getRows());
+        assertEquals(2, library.csvBookCopy(copies).getRows());
+        assertEquals(1, library.csvCustomer(customers).getRows());
+        assertEquals(Set.of(10L), library.getCustomer(1L).orElseThrow().getBookCopiesId());
+        assertThrows(RuntimeException.class, () -> library.csvCustomer(duplicateLoan));
+        assertThrows(RuntimeException.class, () -> library.csvBookCopy(copies));
+    }
+
     @Test
     void testPrintAllPublisherAndBookCopies() {
-        String publisher1 = "Klett:  2 BookCopies (66.0%)";
-        String publisher2 = "Penguin Publishing:  1 BookCopies (33.0%)";
-        Set<String> publisherSet = ui.printAllPublisherAndBookCopies();
+        String publisher1 = "Klett:  2 BookCopies (66.67%)";
+        String publisher2 = "Penguin Publishing:  1 BookCopies (33.33%)";
+        List<String> publisherSet = ui.printAllPublisherAndBookCopies();
         Iterator<String> it = publisherSet.iterator();
         assertEquals(it.next(), publisher1);
         assertEquals(it.next(), publisher2);
@@ -80,4 +289,221 @@ public class LibraryTest {
 
     }
 
+    @Test
+    void testLentAndAvailableBookCopies() {
+        assertEquals(List.of(1L), library.getLentBookCopies().stream().map(BookCopy::getId).toList());
+        assertEquals(Set.of(0L, 2L), library.getAvailableBookCopies().stream().map(BookCopy::getId)
+                .collect(Collectors.toSet()));
+        library.lendBook(1234L, 0L);
+        assertEquals(2, library.getLentBookCopyCount());
+        assertEquals(1, library.getAvailableBookCopyCount());
+        assertEquals(List.of(2L), library.getAvailableBookCopies().stream().map(BookCopy::getId).toList());
+        library.deleteBookCopy(2L);
+        library.returnBook(123L, 1L);
+        assertEquals(List.of(0L), library.getLentBookCopies().stream().map(BookCopy::getId).toList());
+        assertEquals(List.of(1L), library.getAvailableBookCopies().stream().map(BookCopy::getId).toList());
+        assertEquals(1, library.getAvailableBookCopyCount());
+    }
+
+    @Test
+    void testLentStateAfterManyDeletes() {
+        Set<BookCopy> bookCopies = new HashSet<>();
+        for (long id = 0; id < 5_000; id++)
+            bookCopies.add(new BookCopy(id * 1024, "100", "A1", LocalDate.now(), id % 2 == 0, LocalDate.now()));
+        Customer customer = new Customer(1L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of());
+        Library many = new Library(bookCopies, Set.of(customer),
+                Set.of(new Book("100", "The Life", Set.of(), 2011, "Stuttgart", "Klett", 12)));
+        for (long id = 4_999; id >= 0; id--)
+            if (id % 2 == 1 && id % 3 == 0)
+                many.deleteBookCopy(id * 1024);
+        many.lendBook(1L, 1024L);
+        many.returnBook(1L, 1024L);
+        many.lendBook(1L, 5 * 1024L);
+
+        Set<Long> lent = new HashSet<>();
+        Set<Long> available = new HashSet<>();
+        for (long id = 0; id < 5_000; id++) {
+            if (id % 2 == 0 || id == 5)
+                lent.add(id * 1024);
+            else if (id % 3 != 0)
+                available.add(id * 1024);
+        }
+        assertEquals(lent, many.getLentBookCopies().stream().map(BookCopy::getId).collect(Collectors.toSet()));
+        assertEquals(available,
+                many.getAvailableBookCopies().stream().map(BookCopy::getId).collect(Collectors.toSet()));
+        assertEquals(lent.size(), many.getLentBookCopyCount());
+        assertEquals(available.size(), many.getAvailableBookCopyCount());
+    }
+
+    @Test
+    void testBookCopiesByLendingDate() {
+        LocalDate today = LocalDate.now();
+        Book book = new Book("100", "The Life", Set.of(), 2011, "Stuttgart", "Klett", 12);
+        BookCopy old = new BookCopy(0L, "100", "2a", today, true, today.minusDays(40));
+        BookCopy older = new BookCopy(1L, "100", "2a", today, true, today.minusDays(60));
+        BookCopy recent = new BookCopy(2L, "100", "2a", today, true, today.minusDays(3));
+        BookCopy available = new BookCopy(3L, "100", "2a", today, false, today.minusDays(90));
+        Customer customer = new Customer(123L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of(0L, 1L, 2L));
+        Library library = new Library(Set.of(old, older, recent, available), Set.of(customer), Set.of(book));
+
+        LocalDate overdue = today.minusDays(30);
+        assertEquals(2, library.countBookCopiesLentBefore(overdue));
+        assertEquals(List.of(1L, 0L), library.getBookCopiesLentBefore(overdue).stream().map(BookCopy::getId).toList());
+        assertEquals(List.of(0L, 2L), library.getBookCopiesLentBetween(today.minusDays(40), today).stream()
+                .map(BookCopy::getId).toList());
+
+        Iterator<BookCopy> iterator = library.iterateBookCopiesLentBefore(overdue);
+        assertEquals(1L, iterator.next().getId());
+        // Returned while iterating, the copy is not seen any more
+        library.returnBook(123L, 0L);
+        assertFalse(iterator.hasNext());
+
+        library.lendBook(123L, 3L);
+        assertEquals(1, library.countBookCopiesLentBefore(overdue));
+        assertEquals(3, library.countBookCopiesLentBefore(today.plusDays(1)));
+        assertEquals(List.of(3L), library.getBookCopiesLentBetween(today, today.plusDays(1)).stream()
+                .map(BookCopy::getId).toList());
+        library.returnBook(123L, 1L);
+        assertEquals(0, library.countBookCopiesLentBefore(overdue));
+        assertEquals(List.of(), library.getBookCopiesLentBefore(overdue));
+        // Copy 3 is in the bucket of the last lending, returning it is counted before the bucket goes to the tree
+        library.returnBook(123L, 3L);
+        assertEquals(1, library.countBookCopiesLentBefore(today.plusDays(1)));
+        library.lendBook(123L, 3L);
+        library.returnBook(123L, 2L);
+        assertEquals(1, library.countBookCopiesLentBefore(today.plusDays(1)));
+    }
+
+    @Test
+    void testCountBookCopiesLentBeforeAnyDate() {
+        List<LocalDate> dates = List.of(LocalDate.of(1900, 5, 1), LocalDate.of(1949, 12, 31), LocalDate.of(1950, 1, 1),
+                LocalDate.of(2022, 3, 1), LocalDate.of(2022, 3, 1), LocalDate.of(2099, 12, 31),
+                LocalDate.of(2100, 1, 1), LocalDate.of(2250, 7, 1));
+        Set<BookCopy> copies = new HashSet<>();
+        for (int i = 0; i < dates.size(); i++)
+            copies.add(new BookCopy((long) i, "100", "A1", LocalDate.now(), true, dates.get(i)));
+        Customer customer = new Customer(1L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of(1L, 6L));
+        Library lent = new Library(copies, Set.of(customer),
+                Set.of(new Book("100", "The Life", Set.of(), 2011, "Stuttgart", "Klett", 12)));
+        List<LocalDate> queries = List.of(LocalDate.MIN, LocalDate.of(1900, 5, 1), LocalDate.of(1900, 5, 2),
+                LocalDate.of(1950, 1, 1), LocalDate.of(1950, 1, 2), LocalDate.of(2022, 3, 2), LocalDate.of(2100, 1, 1),
+                LocalDate.of(2100, 1, 2), LocalDate.of(2250, 7, 2), LocalDate.MAX);
+        for (LocalDate date : queries)
+            assertEquals(dates.stream().filter(d -> d.isBefore(date)).count(), lent.countBookCopiesLentBefore(date));
+
+        // Returned copies from before 1950 and after 2099 are not counted any more
+        lent.returnBook(1L, 1L);
+        lent.returnBook(1L, 6L);
+        for (LocalDate date : queries)
+            assertEquals(lent.getBookCopiesLentBefore(date).size(), lent.countBookCopiesLentBefore(date));
+        assertEquals(dates.size() - 2, lent.countBookCopiesLentBefore(LocalDate.MAX));
+    }
+
+    @Test
+    void testBookCopiesByShelf() {
+        List<String> locations = List.of("A10", "B1", "A49.1", "A4b", "A9", "A41", "A410", "A4", "A49", "A40", "A041");
+        Set<BookCopy> copies = new HashSet<>();
+        for (int i = 0; i < locations.size(); i++)
+            copies.add(new BookCopy((long) i, "100", locations.get(i), LocalDate.now(), false, LocalDate.now()));
+        copies.add(new BookCopy(20L, "100", "A41", LocalDate.now(), false, LocalDate.now()));
+        Library library = new Library(copies, Set.of(), Set.of());
+
+        // Numbers are compared by value, copies on the same shelf by id, the shelves below the last one are included
+        List<String> shelves = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+        do {
+            Page<BookCopy> page = library.getBookCopiesByShelfRange("A40", "A49", 2, token);
+            assertTrue(page.getItems().size() <= 2);
+            page.getItems().forEach(bookCopy -> shelves.add(bookCopy.getShelfLocation()));
+            page.getItems().forEach(bookCopy -> ids.add(bookCopy.getId()));
+            token = page.getNextPageToken();
+        } while (token != null);
+        assertEquals(List.of("A40", "A41", "A41", "A041", "A49", "A49.1"), shelves);
+        assertEquals(List.of(9L, 5L, 20L, 10L, 8L, 2L), ids);
+
+        assertEquals(List.of("A4", "A4b"), library.getBookCopiesByShelfPrefix("A4", 10, null).getItems().stream()
+                .map(BookCopy::getShelfLocation).toList());
+        Page<BookCopy> row = library.getBookCopiesByShelfPrefix("A", 100, null);
+        assertFalse(row.hasNextPage());
+        assertEquals(List.of("A4", "A4b", "A9", "A10", "A40", "A41", "A41", "A041", "A49", "A49.1", "A410"),
+                row.getItems().stream().map(BookCopy::getShelfLocation).toList());
+
+        library.deleteBookCopy(5L);
+        Page<BookCopy> first = library.getBookCopiesByShelfRange("A40", "A49", 1, null);
+        assertEquals(List.of(9L), first.getItems().stream().map(BookCopy::getId).toList());
+        assertEquals(List.of(20L), library.getBookCopiesByShelfRange("A40", "A49", 1, first.getNextPageToken())
+                .getItems().stream().map(BookCopy::getId).toList());
+        assertThrows(IllegalArgumentException.class, () -> library.getBookCopiesByShelfPrefix("A", 0, null));
+        assertThrows(IllegalArgumentException.class, () -> library.getBookCopiesByShelfPrefix("A", 10, "A41"));
+    }
+
+    @Test
+    void testListingsPageByPage() {
+        assertEquals(List.of("100", "101"), readAll(token -> library.getBooks(1, token)).stream().map(Book::getIsbn)
+                .toList());
+        Page<Customer> customers = library.getCustomers(2, null);
+        assertEquals(List.of(123L, 1234L), customers.getItems().stream().map(Customer::getId).toList());
+        // A page continues after the last item of the previous page, also when that item was deleted
+        library.deleteCustomer(1234L);
+        assertEquals(List.of(12345L), library.getCustomers(2, customers.getNextPageToken()).getItems().stream()
+                .map(Customer::getId).toList());
+
+        assertEquals(List.of(1L), readAll(token -> library.getLentBookCopies(1, token)).stream().map(BookCopy::getId)
+                .toList());
+        Page<BookCopy> available = library.getAvailableBookCopies(1, null);
+        assertTrue(available.hasNextPage());
+        library.lendBook(12345L, available.getItems().get(0).getId());
+        Set<Long> ids = new HashSet<>();
+        readAll(token -> library.getAvailableBookCopies(1, token)).forEach(bookCopy -> ids.add(bookCopy.getId()));
+        assertEquals(1, ids.size());
+        assertEquals(2, readAll(token -> library.getLentBookCopies(10, token)).size());
+        assertThrows(IllegalArgumentException.class, () -> library.getCustomers(0, null));
+        assertThrows(IllegalArgumentException.class, () -> library.getLentBookCopies(1, "first"));
+    }
+
+    @Test
+    void testCopyAddedWhilePagingIsListed(@TempDir Path dir) throws IOException {
+        Page<BookCopy> first = library.getAvailableBookCopies(1, null);
+        assertEquals(List.of(0L), first.getItems().stream().map(BookCopy::getId).toList());
+        // The new copy may take over the place of the deleted one in the indexes, the listing still follows the ids
+        library.deleteBookCopy(0L);
+        library.csvBookCopy(Files.writeString(dir.resolve("copies.csv"),
+                "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n3;100;4a;2020-01-01;false;2020-01-01\n"));
+        List<Long> ids = new ArrayList<>(List.of(0L));
+        String token = first.getNextPageToken();
+        while (token != null) {
+            Page<BookCopy> page = library.getAvailableBookCopies(1, token);
+            page.getItems().forEach(bookCopy -> ids.add(bookCopy.getId()));
+            token = page.getNextPageToken();
+        }
+        assertEquals(List.of(0L, 2L, 3L), ids);
+    }
+
+    private static <T> List<T> readAll(Function<String, Page<T>> pages) {
+        List<T> items = new ArrayList<>();
+        String token = null;
+        do {
+            Page<T> page = pages.apply(token);
+            items.addAll(page.getItems());
+            token = page.getNextPageToken();
+        } while (token != null);
+        return items;
+    }
+
+    @Test
+    void testPublisherStatisticsFollowChanges() {
+        library.deleteBookCopy(0L);
+        assertEquals(List.of("Klett:  1 BookCopies (50.00%)", "Penguin Publishing:  1 BookCopies (50.00%)"),
+                ui.printAllPublisherAndBookCopies());
+        library.deleteBook("101");
+        assertEquals(List.of("Klett:  1 BookCopies (100.00%)"), ui.printAllPublisherAndBookCopies());
+        library.returnBook(123L, 1L);
+        library.deleteBook("100");
+        assertEquals(List.of(), library.getPublisherStatistics());
+    }
+
 }
\ No newline at end of file
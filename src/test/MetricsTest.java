@@ -0,0 +1,138 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.ImportMode;
+import main.library.Library;
+import main.library.Metrics;
+import main.library.OperationStatistics;
+import main.logic.Logic;
+
+public class MetricsTest {
+
+    private static Library createLibrary() {
+        Book book = new Book("100", "The Life", Set.of("Paul Hund"), 2011, "Stuttgart", "Klett", 12);
+        BookCopy bookCopy = new BookCopy(1L, "100", "2a", LocalDate.now(), false, LocalDate.now());
+        Customer customer = new Customer(1L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of());
+        return new Library(Set.of(bookCopy), Set.of(customer), Set.of(book));
+    }
+
+    private static OperationStatistics find(Metrics metrics, String operation) {
+        return metrics.getOperations().stream().filter(o -> o.getOperation().equals(operation)).findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    void testNothingIsCountedWhileDisabled() {
+        Library library = createLibrary();
+        library.lendBook(1L, 1L);
+        Logic.searchViaISBN("100", library);
+        assertFalse(library.getMetrics().isEnabled());
+        assertTrue(library.getMetrics().getOperations().isEmpty());
+        assertTrue(library.getMetrics().getErrors().isEmpty());
+    }
+
+    @Test
+    void testCountsCallsErrorsAndLatencies() {
+        Library library = createLibrary();
+        Metrics metrics = library.getMetrics();
+        metrics.setEnabled(true);
+        for (int i = 0; i < 100; i++) {
+            library.lendBook(1L, 1L);
+            library.returnBook(1L, 1L);
+        }
+        assertThrows(RuntimeException.class, () -> library.lendBook(2L, 1L));
+        assertThrows(RuntimeException.class, () -> library.lendBook(3L, 1L));
+        assertThrows(RuntimeException.class, () -> library.returnBook(1L, 1L));
+        Logic.searchViaAuthor("Paul Hund", library);
+        assertThrows(RuntimeException.class, () -> Logic.searchViaISBN("200", library));
+        assertThrows(RuntimeException.class, () -> library.deleteBook("200"));
+
+        OperationStatistics lend = find(metrics, "lendBook");
+        assertEquals(102, lend.getCalls());
+        assertEquals(2, lend.getErrors());
+        assertTrue(lend.getP50Micros() <= lend.getP99Micros() && lend.getP99Micros() <= lend.getMaxMicros());
+        assertTrue(lend.getMeanMicros() > 0);
+        assertEquals(101, find(metrics, "returnBook").getCalls());
+        // Nested searches are counted once, under the operation that was called
+        assertEquals(1, find(metrics, "searchViaAuthor").getCalls());
+        assertTrue(metrics.getOperations().stream().noneMatch(o -> o.getOperation().equals("findMatchingCopies")));
+        assertEquals(Map.of("lendBook: Customer not found", 2L, "returnBook: Book is not lent", 1L,
+                "searchViaISBN: ISBN not found", 1L, "deleteBook: Book not found", 1L), metrics.getErrors());
+
+        String dump = metrics.dump();
+        assertTrue(dump.contains("lendBook"));
+        assertTrue(dump.contains("lendBook: Customer not found: 2"));
+        metrics.reset();
+        assertTrue(metrics.getOperations().isEmpty());
+        assertTrue(metrics.getErrors().isEmpty());
+    }
+
+    @Test
+    void testCountsImportedRowsAndErrorCategories(@TempDir Path dir) throws IOException {
+        Path books = dir.resolve("books.csv");
+        Files.writeString(books, "isbn;title;authors;year;city;publisher;edition\n"
+                + "1;A;X;2000;Stuttgart;Klett;1\n2;B;Y;2001;Stuttgart;Klett;2\n");
+        Path invalid = dir.resolve("invalid.csv");
+        Files.writeString(invalid, "isbn;title;authors;year;city;publisher;edition\n3;C;Z;year;Stuttgart;Klett;1\n");
+        Library library = new Library();
+        library.getMetrics().setEnabled(true);
+        library.csvBook(books, ImportMode.STREAMING);
+        assertThrows(RuntimeException.class, () -> library.csvBook(invalid, ImportMode.STREAMING));
+        assertThrows(IOException.class, () -> library.csvBook(dir.resolve("missing.csv"), ImportMode.STREAMING));
+
+        OperationStatistics csvBook = find(library.getMetrics(), "csvBook");
+        assertEquals(3, csvBook.getCalls());
+        assertEquals(2, csvBook.getErrors());
+        assertEquals(2, csvBook.getRows());
+        assertTrue(csvBook.getRowsPerSecond() > 0);
+        // The row and value are cut from the message, exceptions other than RuntimeException count by class
+        assertEquals(Map.of("csvBook: Invalid number", 1L, "csvBook: NoSuchFileException", 1L),
+                library.getMetrics().getErrors());
+    }
+
+    @Test
+    void testMetricsCanBeReadThroughJmx() throws JMException {
+        Library library = createLibrary();
+        ObjectName name = library.getMetrics().register("metrics-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.setAttribute(name, new Attribute("Enabled", true));
+            library.lendBook(1L, 1L);
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+            assertEquals(1, operations.length);
+            assertEquals("lendBook", operations[0].get("operation"));
+            assertEquals(1L, operations[0].get("calls"));
+            String dump = (String) server.invoke(name, "dump", null, null);
+            assertTrue(dump.startsWith("Metrics enabled"));
+            assertThrows(RuntimeException.class, () -> library.getMetrics().register("metrics-test"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
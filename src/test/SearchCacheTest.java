@@ -0,0 +1,113 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.ImportMode;
+import main.library.Library;
+import main.library.SearchCache;
+import main.logic.Logic;
+
+public class SearchCacheTest {
+
+    private static Library createLibrary() {
+        Book book = new Book("100", "The Life", Set.of("Paul Hund"), 2011, "Stuttgart", "Klett", 12);
+        BookCopy bookCopy1 = new BookCopy(1L, "100", "2a", LocalDate.now(), false, LocalDate.now());
+        BookCopy bookCopy2 = new BookCopy(2L, "100", "2b", LocalDate.now(), false, LocalDate.now());
+        Customer customer = new Customer(1L, "Paul", "Hund", "Böblingen", "HauptStrasse", "70563", true, true,
+                Set.of());
+        return new Library(Set.of(bookCopy1, bookCopy2), Set.of(customer), Set.of(book));
+    }
+
+    private static Set<Long> ids(Set<BookCopy> bookCopies) {
+        return bookCopies.stream().map(BookCopy::getId).collect(Collectors.toSet());
+    }
+
+    @Test
+    void testRepeatedSearchesAreAnsweredFromTheCache() {
+        Library library = createLibrary();
+        SearchCache cache = library.getSearchCache();
+        Set<BookCopy> first = Logic.searchViaISBN("100", library);
+        assertSame(first, Logic.searchViaISBN("100", library));
+        assertSame(Logic.searchViaTitle("the life", library), Logic.searchViaTitle("the life", library));
+        assertSame(Logic.searchViaAuthor("Paul Hund", library), Logic.searchViaAuthor("Paul Hund", library));
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(3, cache.size());
+        // Failed searches are not kept
+        assertThrows(RuntimeException.class, () -> Logic.searchViaISBN("200", library));
+        assertThrows(RuntimeException.class, () -> Logic.searchViaISBN("200", library));
+        assertEquals(5, cache.getMisses());
+        assertThrows(UnsupportedOperationException.class, () -> first.clear());
+
+        cache.setEnabled(false);
+        assertNotSame(Logic.searchViaISBN("100", library), Logic.searchViaISBN("100", library));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testChangesOfTheCatalogInvalidateResults(@TempDir Path dir) throws IOException {
+        Library library = createLibrary();
+        SearchCache cache = library.getSearchCache();
+        Set<BookCopy> found = Logic.searchViaISBN("100", library);
+        // Lending does not change which copies are found, the copies show that they are lent
+        library.lendBook(1L, 1L);
+        assertSame(found, Logic.searchViaISBN("100", library));
+        assertTrue(library.getBookCopy(1L).orElseThrow().isLent());
+        library.returnBook(1L, 1L);
+
+        library.deleteBookCopy(2L);
+        assertEquals(Set.of(1L), ids(Logic.searchViaISBN("100", library)));
+        Path copies = dir.resolve("copies.csv");
+        Files.writeString(copies, "id;bookIsbn;shelfLocation;addedToLibrary;lent;lentDate\n3;100;2c;2020-01-01;false;"
+                + "2020-01-01\n");
+        library.csvBookCopy(copies, ImportMode.STREAMING);
+        assertEquals(Set.of(1L, 3L), ids(Logic.searchViaISBN("100", library)));
+        assertEquals(Set.of(1L, 3L), ids(Logic.searchViaAuthor("Paul Hund", library)));
+        library.deleteBook("100");
+        assertThrows(RuntimeException.class, () -> Logic.searchViaISBN("100", library));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void testLeastRecentlyUsedResultsAreDropped() {
+        Set<Book> books = new HashSet<>();
+        Set<BookCopy> bookCopies = new HashSet<>();
+        int count = 2 * SearchCache.DEFAULT_CAPACITY;
+        for (int i = 0; i < count; i++) {
+            books.add(new Book("isbn" + i, "Title " + i, Set.of(), 2011, "Stuttgart", "Klett", 1));
+            bookCopies.add(new BookCopy((long) i, "isbn" + i, "A1", LocalDate.now(), false, LocalDate.now()));
+        }
+        Library library = new Library(bookCopies, Set.of(), books);
+        SearchCache cache = library.getSearchCache();
+        for (int i = 0; i < count; i++) {
+            Logic.searchViaISBN("isbn" + i, library);
+            // Used again and again, the first search stays in the cache
+            Logic.searchViaISBN("isbn0", library);
+        }
+        assertTrue(cache.size() <= SearchCache.DEFAULT_CAPACITY);
+        assertEquals(count - cache.size(), cache.getEvictions());
+        long misses = cache.getMisses();
+        Logic.searchViaISBN("isbn0", library);
+        assertEquals(misses, cache.getMisses());
+    }
+}
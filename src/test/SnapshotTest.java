@@ -0,0 +1,60 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static test.TestLibraries.createLibrary;
+import static test.TestLibraries.describe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.library.Book;
+import main.library.Library;
+
+public class SnapshotTest {
+
+    @Test
+    void testSnapshotRestoresLibrary(@TempDir Path dir) throws IOException {
+        Library library = createLibrary(200, 5_000, 1_000, 3);
+        library.lendBook(3L, 4_000L);
+        library.returnBook(0L, 0L);
+        Path snapshot = dir.resolve("library.snapshot");
+
+        library.saveSnapshot(snapshot);
+        Library loaded = Library.loadSnapshot(snapshot);
+
+        assertEquals(describe(library), describe(loaded));
+        assertFalse(Files.exists(dir.resolve("library.snapshot.tmp")));
+        // The loaded library works like the saved one
+        loaded.returnBook(3L, 4_000L);
+        assertFalse(loaded.getBookCopy(4_000L).orElseThrow().isLent());
+        assertEquals(1, loaded.getBooksByAuthor("author 1").size());
+        assertEquals(List.of("isbn12"), loaded.searchBooksByTitle("title 12", 1).stream().map(Book::getIsbn).toList());
+    }
+
+    @Test
+    void testSnapshotRejectsDamagedFiles(@TempDir Path dir) throws IOException {
+        Path snapshot = dir.resolve("library.snapshot");
+        createLibrary(10, 100, 20, 3).saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        assertEquals("Snapshot is damaged",
+                assertThrows(RuntimeException.class, () -> Library.loadSnapshot(snapshot)).getMessage());
+
+        Files.write(snapshot, ByteBuffer.allocate(8).putInt(0x4D4C4942).putInt(99).array());
+        assertEquals("Unsupported snapshot version 99",
+                assertThrows(RuntimeException.class, () -> Library.loadSnapshot(snapshot)).getMessage());
+
+        Files.writeString(snapshot, "isbn;title;authors;year;city;publisher;edition\n");
+        assertThrows(RuntimeException.class, () -> Library.loadSnapshot(snapshot));
+    }
+}
@@ -0,0 +1,67 @@
+package test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import main.library.Book;
+import main.library.BookCopy;
+import main.library.Customer;
+import main.library.Library;
+
+/**
+ * libraries shared by the tests that save and restore a library, and a description to compare them by
+ */
+final class TestLibraries {
+
+    private TestLibraries() {
+    }
+
+    /**
+     * creates a library in which customer i has lent the copies i, i + customers and so on, loans copies each, except
+     * the last customer, who has none. Customers with an odd id can be deleted once they returned their copies
+     */
+    static Library createLibrary(int books, int copies, int customers, int loans) {
+        Set<Book> bookSet = new HashSet<>();
+        for (int i = 0; i < books; i++)
+            bookSet.add(new Book("isbn" + i, "Title " + i, Set.of("Author " + i, "Co Author " + i % 7), 1950 + i % 70,
+                    "Stuttgart", "Publisher " + i % 13, 1 + i % 4));
+        Set<BookCopy> copySet = new HashSet<>();
+        for (long id = 0; id < copies; id++) {
+            boolean lent = id < (long) loans * customers && id % customers != customers - 1;
+            copySet.add(new BookCopy(id, "isbn" + id % books, "A" + id % 100,
+                    LocalDate.of(2020, 1, 1).plusDays(id % 365), lent, LocalDate.of(2022, 3, 1).plusDays(id % 30)));
+        }
+        Set<Customer> customerSet = new HashSet<>();
+        for (long id = 0; id < customers; id++) {
+            Set<Long> lent = new HashSet<>();
+            for (int loan = 0; loan < loans && id < customers - 1 && id + (long) loan * customers < copies; loan++)
+                lent.add(id + (long) loan * customers);
+            customerSet.add(new Customer(id, "Name " + id, "First", "Street " + id % 50, "City", "7056" + id % 10,
+                    id % 2 == 1, id % 3 == 0, lent));
+        }
+        return new Library(copySet, customerSet, bookSet);
+    }
+
+    /**
+     * describes every book, copy and customer of the library with all their fields
+     */
+    static List<Set<String>> describe(Library library) {
+        Set<String> books = library.getBooks().stream()
+                .map(b -> List.of(b.getIsbn(), b.getTitle(), new TreeSet<>(b.getAuthors()), b.getYear(), b.getCity(),
+                        b.getPublisher(), b.getEdition()).toString())
+                .collect(Collectors.toSet());
+        Set<String> copies = library.getBookCopies().stream().map(c -> List.of(c.getId(), c.getIsbn(),
+                c.getShelfLocation(), c.getAddedToLibrary(), c.isLent(), c.getLentDate()).toString())
+                .collect(Collectors.toSet());
+        Set<String> customers = library.getCustomers().stream()
+                .map(c -> List.of(c.getId(), c.getName(), c.getFirstName(), c.getAddress(), c.getCity(),
+                        c.getZipCode(), c.hasOverdraftFees(), c.hasPaidMonthlyContribution(),
+                        new TreeSet<>(c.getBookCopiesId())).toString())
+                .collect(Collectors.toSet());
+        return List.of(books, copies, customers);
+    }
+}